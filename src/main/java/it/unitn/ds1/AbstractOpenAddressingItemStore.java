@@ -0,0 +1,236 @@
+package it.unitn.ds1;
+
+import java.util.Arrays;
+
+// ItemStore based on an open-addressing hash table with linear probing.
+// Keys and versions are kept in parallel primitive arrays, so a lookup does not box the key and
+// getVersion() never touches the value. The subclasses decide where the values are kept: they
+// manage a value column with the same slots of the table.
+// Removals use backward-shift deletion, hence the table never contains tombstones and a probe
+// sequence always stops at the first free slot.
+// The keys are also kept in a SortedKeyIndex ordered by their token on the ring, which answers
+// keysInTokenRange() without scanning the table.
+public abstract class AbstractOpenAddressingItemStore implements ItemStore {
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private int[] keys;
+    private long[] versions;
+    private boolean[] used;     // used[i] == true --> slot i contains an item
+    private int mask;           // capacity - 1 (the capacity is always a power of two)
+    private int size;
+    private int resizeThreshold;
+    private final SortedKeyIndex sortedKeys = new SortedKeyIndex();
+    private final Partitioner partitioner;
+
+    protected AbstractOpenAddressingItemStore(int expectedItems, Partitioner partitioner){
+        this.partitioner = partitioner;
+        int capacity = tableSizeFor((int) Math.ceil(Math.max(expectedItems, 1) / LOAD_FACTOR));
+        allocate(capacity);
+        resizeValues(capacity, new int[0]);
+    }
+
+    /*===VALUE COLUMN===*/
+
+    // replace the value column with one of the given capacity; destination[i] is the slot of the new
+    // column which receives the value in slot i of the current column, -1 if slot i is empty.
+    // Remark: it is called also by the constructor (with an empty destination array), before the
+    // fields of the subclass are initialized
+    protected abstract void resizeValues(int capacity, int[] destination);
+
+    // store the value in the slot, which is empty
+    protected abstract void storeValue(int slot, String value);
+
+    protected abstract String loadValue(int slot);
+
+    // release the value in the slot, which is going to be freed or overwritten
+    protected abstract void releaseValue(int slot);
+
+    // move the value from slot "from" to the empty slot "to"
+    protected abstract void moveValue(int from, int to);
+
+    // release all the values
+    protected abstract void clearValues();
+
+    /*======================*/
+
+    @Override
+    public Item get(int key){
+        int slot = findSlot(key);
+        if(slot < 0){
+            return null;
+        }
+        return new Item(key, loadValue(slot), versions[slot]);
+    }
+
+    @Override
+    public long getVersion(int key){
+        int slot = findSlot(key);
+        return slot < 0 ? -1 : versions[slot];
+    }
+
+    @Override
+    public boolean containsKey(int key){
+        return findSlot(key) >= 0;
+    }
+
+    @Override
+    public void put(Item item){
+        int slot = hash(item.getKey()) & mask;
+        while(used[slot]){
+            if(keys[slot] == item.getKey()){  // overwrite the item already stored
+                versions[slot] = item.getVersion();
+                releaseValue(slot);
+                storeValue(slot, item.getValue());
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        used[slot] = true;
+        keys[slot] = item.getKey();
+        versions[slot] = item.getVersion();
+        storeValue(slot, item.getValue());
+        sortedKeys.add(partitioner.token(item.getKey()), item.getKey());
+        if(++size > resizeThreshold){
+            rehash(keys.length << 1);
+        }
+    }
+
+    @Override
+    public boolean remove(int key){
+        int slot = findSlot(key);
+        if(slot < 0){
+            return false;
+        }
+        releaseValue(slot);
+        sortedKeys.remove(partitioner.token(key), key);
+
+        // backward-shift deletion: move back the following items of the cluster which
+        // would not be reachable anymore once the slot is freed
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while(used[next]){
+            int home = hash(keys[next]) & mask;
+            // the item in "next" can fill the hole only if its home slot is not in (hole, next]
+            if(((next - home) & mask) >= ((next - hole) & mask)){
+                keys[hole] = keys[next];
+                versions[hole] = versions[next];
+                moveValue(next, hole);
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        used[hole] = false;
+        size--;
+        return true;
+    }
+
+    @Override
+    public int size(){
+        return size;
+    }
+
+    @Override
+    public void clear(){
+        clearValues();
+        Arrays.fill(used, false);
+        sortedKeys.clear();
+        size = 0;
+    }
+
+    @Override
+    public int[] keys(){
+        int[] result = new int[size];
+        int j = 0;
+        for(int i = 0; i < keys.length; i++){
+            if(used[i]){
+                result[j++] = keys[i];
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int[] keysInTokenRange(long low, long high){
+        return sortedKeys.range(low, high);
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder sb = new StringBuilder("{");
+        for(int i = 0; i < keys.length; i++){
+            if(used[i]){
+                if(sb.length() > 1){
+                    sb.append(", ");
+                }
+                sb.append(keys[i]).append('=').append(new Item(keys[i], loadValue(i), versions[i]));
+            }
+        }
+        return sb.append('}').toString();
+    }
+
+    // return true if the slot contains an item (used by the subclasses to iterate their value column)
+    protected boolean isUsed(int slot){
+        return used[slot];
+    }
+
+    protected int capacity(){
+        return keys.length;
+    }
+
+    // return the slot containing the key, -1 if the key is not stored
+    private int findSlot(int key){
+        int slot = hash(key) & mask;
+        while(used[slot]){
+            if(keys[slot] == key){
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void rehash(int newCapacity){
+        int[] oldKeys = keys;
+        long[] oldVersions = versions;
+        boolean[] oldUsed = used;
+        int[] destination = new int[oldKeys.length];
+
+        allocate(newCapacity);
+        for(int i = 0; i < oldKeys.length; i++){
+            destination[i] = -1;
+            if(oldUsed[i]){
+                int slot = hash(oldKeys[i]) & mask;
+                while(used[slot]){
+                    slot = (slot + 1) & mask;
+                }
+                used[slot] = true;
+                keys[slot] = oldKeys[i];
+                versions[slot] = oldVersions[i];
+                destination[i] = slot;
+                size++;
+            }
+        }
+        resizeValues(newCapacity, destination);
+    }
+
+    private void allocate(int capacity){
+        keys = new int[capacity];
+        versions = new long[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        size = 0;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    // item keys are often sequential: spread them over the table (Fibonacci hashing)
+    private static int hash(int key){
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSizeFor(int n){
+        int capacity = Integer.highestOneBit(Math.max(n, 2) - 1) << 1;
+        return Math.max(capacity, 2);
+    }
+}
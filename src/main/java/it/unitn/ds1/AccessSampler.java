@@ -0,0 +1,69 @@
+package it.unitn.ds1;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Counter of the accesses to the items of a node, used by the rebalancer.
+// It counts every access of the current window and keeps an estimate of the most accessed keys
+// with the Space-Saving algorithm: at most "capacity" keys are tracked and, when a new key arrives
+// and the table is full, it replaces the key with the lowest count and inherits that count. The
+// count of a hot key is therefore never underestimated, while cold keys quickly leave the table.
+public class AccessSampler {
+    private final int capacity;
+    private final Map<Integer, Long> counts;
+    private long accesses;          // accesses of the current window
+    private long windowStart;       // System.nanoTime() at the beginning of the current window
+
+    public AccessSampler(int capacity){
+        this.capacity = capacity;
+        this.counts = new HashMap<>(capacity * 2);
+        this.windowStart = System.nanoTime();
+    }
+
+    public void record(int key){
+        accesses++;
+        Long count = counts.get(key);
+        if(count != null){
+            counts.put(key, count + 1);
+            return;
+        }
+        if(counts.size() < capacity){
+            counts.put(key, 1L);
+            return;
+        }
+
+        // replace the key with the lowest count
+        int minKey = 0;
+        long minCount = Long.MAX_VALUE;
+        for(Map.Entry<Integer, Long> entry : counts.entrySet()){
+            if(entry.getValue() < minCount){
+                minKey = entry.getKey();
+                minCount = entry.getValue();
+            }
+        }
+        counts.remove(minKey);
+        counts.put(key, minCount + 1);
+    }
+
+    // accesses per second since the beginning of the window
+    public double getRate(){
+        double seconds = (System.nanoTime() - windowStart) / 1e9;
+        return seconds > 0 ? accesses / seconds : 0;
+    }
+
+    public long getAccesses(){
+        return accesses;
+    }
+
+    // copy of the estimated counts of the hot keys of the window
+    public Map<Integer, Long> getHotKeys(){
+        return new HashMap<>(counts);
+    }
+
+    // start a new window
+    public void reset(){
+        counts.clear();
+        accesses = 0;
+        windowStart = System.nanoTime();
+    }
+}
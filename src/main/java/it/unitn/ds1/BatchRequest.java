@@ -0,0 +1,52 @@
+package it.unitn.ds1;
+
+import akka.actor.ActorRef;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Multi-key get or update of a client (Message.MultiGetRequest, Message.MultiUpdateRequest).
+// The coordinator runs a Request for every key and collects here the result of each one; when all the
+// keys have a result, the client receives them together. Every key succeeds or fails on its own
+public class BatchRequest {
+    private final ActorRef client;        // client that request the operation
+    private final long clientRequestId;   // id of the request given by the client, returned in the result
+    private final int size;               // number of distinct keys of the request
+    private final Map<Integer, ClientMessage.GetResult> getResults;
+    private final Map<Integer, ClientMessage.UpdateResult> updateResults;
+
+    public BatchRequest(ActorRef client, long clientRequestId, int size){
+        this.client = client;
+        this.clientRequestId = clientRequestId;
+        this.size = size;
+        this.getResults = new HashMap<>();
+        this.updateResults = new HashMap<>();
+    }
+
+    // store the result of a key; return true if it is the last one
+    public boolean addGetResult(int key, ClientMessage.GetResult result){
+        getResults.put(key, result);
+        return getResults.size() == size;
+    }
+
+    public boolean addUpdateResult(int key, ClientMessage.UpdateResult result){
+        updateResults.put(key, result);
+        return updateResults.size() == size;
+    }
+
+    public ActorRef getClient(){
+        return client;
+    }
+
+    public long getClientRequestId(){
+        return clientRequestId;
+    }
+
+    public Map<Integer, ClientMessage.GetResult> getGetResults(){
+        return getResults;
+    }
+
+    public Map<Integer, ClientMessage.UpdateResult> getUpdateResults(){
+        return updateResults;
+    }
+}
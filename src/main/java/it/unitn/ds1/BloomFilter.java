@@ -0,0 +1,52 @@
+package it.unitn.ds1;
+
+// Bloom filter over integer keys: mightContain() never returns false for a key which was added,
+// while it returns true for a key which was not added with probability about falsePositiveRate.
+public class BloomFilter {
+    private final long[] bits;
+    private final int numBits;
+    private final int numHashes;
+
+    public BloomFilter(int expectedKeys, double falsePositiveRate){
+        int n = Math.max(expectedKeys, 1);
+        // optimal size and number of hash functions: m = -n ln(p) / ln(2)^2, k = m/n ln(2)
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.numBits = (int) Math.max(64, Math.min(m, Integer.MAX_VALUE - 63));
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / n * Math.log(2)));
+        this.bits = new long[(numBits + 63) / 64];
+    }
+
+    public void add(int key){
+        long h = mix(key);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for(int i = 0; i < numHashes; i++){
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;  // double hashing
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(int key){
+        long h = mix(key);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for(int i = 0; i < numHashes; i++){
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;
+            if((bits[bit >>> 6] & (1L << bit)) == 0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 64-bit finalizer of MurmurHash3
+    private static long mix(int key){
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -1,18 +1,43 @@
 package it.unitn.ds1;
 import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
 import akka.actor.Props;
+import scala.concurrent.duration.Duration;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 public class Client extends AbstractActor {
 
-  private boolean ongoingOperation = false; //Used to understand if other operations are executing
+  private final int maxInFlight;              //Maximum number of operations in progress at the same time
+  private final Map<Long, Item> inFlight = new HashMap<>(); //inFlight[id] :: item of the operation in progress with the given id
+  private final Map<Long, Cancellable> timeouts = new HashMap<>(); //timeouts[id] :: timeout of the operation in progress with the given id
+  private long requestCounter = 0;            //Id of the next operation
   private final Random rnd;
   private final int MAXRANDOMDELAYTIME = 1; //Maximum delay time in seconds
+  private static final int SCAN_CREDITS = 2;  //Pages of a scan the client is ready to receive at the same time
+  private static final int CLIENT_TIMEOUT_FACTOR = 3; //The client gives up an operation after CLIENT_TIMEOUT_FACTOR * T seconds
+  private final int N;                        //Replication factor of the ring, 0 --> the client does not route its requests
+  private final NodeConfig config;            //Placement of the keys (tokensPerNode, partitioner), the same of the nodes
+  private Map<Integer, ActorRef> ring;        //Cached copy of the active nodes, null if it must be (re)fetched
+  private RoutingTable routingTable;          //Preference lists of the cached ring
+  private boolean ringRequested = false;      //A ReqActiveNodeList has been sent and its response has not arrived yet
+  private final Map<Integer, VectorClock> contexts = new HashMap<>(); //contexts[k] :: vector clock of the last version of item k read or written (VECTOR_CLOCK)
 
   public Client() {
-    this.ongoingOperation  = false;
+    this(0, null, 1);
+  }
+
+  public Client(int n, NodeConfig config, int maxInFlight) {
     this.rnd = new Random();
+    this.N = n;
+    this.config = config;
+    this.maxInFlight = maxInFlight;
   }
 
   @Override
@@ -24,6 +49,19 @@ public class Client extends AbstractActor {
     return Props.create(Client.class, () -> new Client());
   }
 
+  // Client which keeps a copy of the ring and sends every request to a node of the preference list of
+  // the item, so that the coordinator is one of the replicas (no forwarding hop, and its own copy
+  // counts toward R or W). N and the configuration must be the same of the nodes
+  static public Props props(int n, NodeConfig config) {
+    return props(n, config, 1);
+  }
+
+  // Client which can have up to maxInFlight operations in progress: every operation has its own id and
+  // the results are matched to the operations by id, so they can arrive in any order
+  static public Props props(int n, NodeConfig config, int maxInFlight) {
+    return Props.create(Client.class, () -> new Client(n, config, maxInFlight));
+  }
+
   // Mapping between the received message types and actor methods
   @Override
   public Receive createReceive() {
@@ -32,6 +70,14 @@ public class Client extends AbstractActor {
             .match(ClientMessage.GetResult.class, this::onGetResult)
             .match(ClientMessage.Update.class, this::onUpdate)
             .match(ClientMessage.UpdateResult.class, this::onUpdateResult)
+            .match(ClientMessage.MultiGet.class, this::onMultiGet)
+            .match(ClientMessage.MultiGetResult.class, this::onMultiGetResult)
+            .match(ClientMessage.MultiUpdate.class, this::onMultiUpdate)
+            .match(ClientMessage.MultiUpdateResult.class, this::onMultiUpdateResult)
+            .match(ClientMessage.Scan.class, this::onScan)
+            .match(ClientMessage.ScanPage.class, this::onScanPage)
+            .match(Message.ResActiveNodeList.class, this::onResActiveNodeList)
+            .match(ClientMessage.RequestTimeout.class, this::onRequestTimeout)
             .build();
   }
 
@@ -39,69 +85,300 @@ public class Client extends AbstractActor {
 
   // Ask the coordinator to get an item
   private void onGet(ClientMessage.Get msg){
-    //Check if no other operations are executing
-    if(this.ongoingOperation == false) {
+    //Check if another operation can start
+    if(this.inFlight.size() < this.maxInFlight) {
       //Execute operation
-      this.ongoingOperation = true;
+      long requestId = this.requestCounter++;
+      this.inFlight.put(requestId, msg.item);
+      this.scheduleTimeout(requestId);
       System.out.println("[" + this.getSelf().path().name() + "] [onGet] Client");
 
       // model a random network/processing delay
       try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
       catch (InterruptedException e) { e.printStackTrace(); }
 
-      //Ask the coordinator to perform the request
-      (msg.coordinator).tell(new Message.GetRequest(this.getSelf().path().name(), msg.item), this.getSelf());
+      //Ask the coordinator to perform the request; any replica can serve the read
+      ActorRef coordinator = this.chooseCoordinator(msg.item.getKey(), msg.coordinator, false);
+      coordinator.tell(new Message.GetRequest(this.getSelf().path().name(), requestId, msg.item), this.getSelf());
     } else{
-      //If another operation is executing, stop and return the message
+      //If too many operations are executing, stop and return the message
       System.out.println("ERR: ongoing operations, item " + msg.item);
     }
   }
 
   private void onGetResult(ClientMessage.GetResult msg){
-    //Release "lock" on client
-    this.ongoingOperation = false;
+    //The operation is over
+    this.completeRequest(msg.requestId);
 
     //Check if the operations have succeeded or aborted due to timeout expiration or other error
     if(msg.result == Result.SUCCESS) {
       System.out.println("["+this.getSelf().path().name()+"] [onGetResult] Client: " + msg.item);
+      if(!msg.siblings.isEmpty()) {
+        // concurrent versions: the next update of the item supersedes all of them
+        System.out.println("["+this.getSelf().path().name()+"] [onGetResult] Client: " + msg.siblings.size() + " siblings " + msg.siblings);
+      }
+      if(msg.item.getClock() != null) {
+        this.contexts.put(msg.item.getKey(), msg.item.getClock());
+      }
     } else {
       System.out.println("[" + this.getSelf().path().name() + "] [onGetResult] Client: ERROR!");
+      this.invalidateRing();
     }
   }
 
   // Ask the coordinator to update an item
   private void onUpdate(ClientMessage.Update msg){
-    //Check if no other operations are executing
-    if(this.ongoingOperation == false) {
+    //Check if another operation can start
+    if(this.inFlight.size() < this.maxInFlight) {
       //Execute operation
-      this.ongoingOperation = true;
+      long requestId = this.requestCounter++;
+      this.inFlight.put(requestId, msg.item);
+      this.scheduleTimeout(requestId);
       System.out.println("[" + this.getSelf().path().name() + "] [onUpdate] Client");
 
       // model a random network/processing delay
       try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
       catch (InterruptedException e) { e.printStackTrace(); }
 
+      //The update descends from the last version of the item the client has seen (VECTOR_CLOCK)
+      Item item = new Item(msg.item);
+      if(item.getClock() == null) {
+        item.setClock(this.contexts.get(item.getKey()));
+      }
+
       //Ask to the coordinator to perform the update
-      (msg.coordinator).tell(new Message.UpdateRequest(this.getSelf().path().name(), msg.item), this.getSelf());
+      ActorRef coordinator = this.chooseCoordinator(msg.item.getKey(), msg.coordinator, true);
+      coordinator.tell(new Message.UpdateRequest(this.getSelf().path().name(), requestId, item, msg.expectedVersion), this.getSelf());
     } else{
-      //If another operation is executing, stop and return the message
+      //If too many operations are executing, stop and return the message
       System.out.println("ERR: ongoing operations, item " + msg.item);
     }
   }
 
   private void onUpdateResult(ClientMessage.UpdateResult msg){
-    //Release "lock" on client
-    this.ongoingOperation = false;
+    //The operation is over
+    this.completeRequest(msg.requestId);
 
     //Check if the operations have succeeded or aborted due to timeout expiration or other error
     if(msg.result == Result.SUCCESS) {
       System.out.println("[" + this.getSelf().path().name() + "] [onUpdateResult] Client: " + msg.item);
+      if(msg.item.getClock() != null) {
+        this.contexts.put(msg.item.getKey(), msg.item.getClock());
+      }
+    } else if(msg.result == Result.CONFLICT) {
+      //The conditional update has found another version: the client can read the item again and retry
+      System.out.println("[" + this.getSelf().path().name() + "] [onUpdateResult] Client: CONFLICT, version " + msg.item.getVersion() + " of item " + msg.item.getKey());
     } else {
       System.out.println("[" + this.getSelf().path().name() + "] [onUpdateResult] Client: ERROR!");
+      this.invalidateRing();
+    }
+  }
+
+  // Ask the coordinator to get several items with a single request
+  private void onMultiGet(ClientMessage.MultiGet msg){
+    //Nothing to do without items
+    if(msg.items.isEmpty()) {
+      System.out.println("ERR: no items in the multi get");
+      return;
+    }
+    //Check if another operation can start
+    if(this.inFlight.size() < this.maxInFlight) {
+      //Execute operation
+      long requestId = this.requestCounter++;
+      this.inFlight.put(requestId, msg.items.get(0));
+      this.scheduleTimeout(requestId);
+      System.out.println("[" + this.getSelf().path().name() + "] [onMultiGet] Client: " + msg.items.size() + " items");
+
+      // model a random network/processing delay
+      try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
+      catch (InterruptedException e) { e.printStackTrace(); }
+
+      //The coordinator groups the reads by replica: any node can serve them
+      ActorRef coordinator = this.chooseCoordinator(msg.items.get(0).getKey(), msg.coordinator, false);
+      coordinator.tell(new Message.MultiGetRequest(this.getSelf().path().name(), requestId, msg.items), this.getSelf());
+    } else{
+      //If too many operations are executing, stop and return the message
+      System.out.println("ERR: ongoing operations, items " + msg.items);
+    }
+  }
+
+  // The results of a multi get, one for every key: every key succeeds or fails on its own
+  private void onMultiGetResult(ClientMessage.MultiGetResult msg){
+    //The operation is over
+    this.completeRequest(msg.requestId);
+
+    for(ClientMessage.GetResult result : msg.results.values()) {
+      this.onGetResult(result);
+    }
+  }
+
+  // Ask the coordinator to update several items with a single request
+  private void onMultiUpdate(ClientMessage.MultiUpdate msg){
+    //Nothing to do without items
+    if(msg.items.isEmpty()) {
+      System.out.println("ERR: no items in the multi update");
+      return;
+    }
+    //Check if another operation can start
+    if(this.inFlight.size() < this.maxInFlight) {
+      //Execute operation
+      long requestId = this.requestCounter++;
+      this.inFlight.put(requestId, msg.items.get(0));
+      this.scheduleTimeout(requestId);
+      System.out.println("[" + this.getSelf().path().name() + "] [onMultiUpdate] Client: " + msg.items.size() + " items");
+
+      // model a random network/processing delay
+      try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
+      catch (InterruptedException e) { e.printStackTrace(); }
+
+      //Every update descends from the last version of its item the client has seen (VECTOR_CLOCK)
+      List<Item> items = new ArrayList<>();
+      for(Item requested : msg.items) {
+        Item item = new Item(requested);
+        if(item.getClock() == null) {
+          item.setClock(this.contexts.get(item.getKey()));
+        }
+        items.add(item);
+      }
+
+      ActorRef coordinator = this.chooseCoordinator(msg.items.get(0).getKey(), msg.coordinator, true);
+      coordinator.tell(new Message.MultiUpdateRequest(this.getSelf().path().name(), requestId, items), this.getSelf());
+    } else{
+      //If too many operations are executing, stop and return the message
+      System.out.println("ERR: ongoing operations, items " + msg.items);
+    }
+  }
+
+  // The results of a multi update, one for every key
+  private void onMultiUpdateResult(ClientMessage.MultiUpdateResult msg){
+    //The operation is over
+    this.completeRequest(msg.requestId);
+
+    for(ClientMessage.UpdateResult result : msg.results.values()) {
+      this.onUpdateResult(result);
     }
   }
 
+  // Ask the coordinator for the items in a range of keys
+  private void onScan(ClientMessage.Scan msg){
+    //Check if another operation can start
+    if(this.inFlight.size() < this.maxInFlight) {
+      //Execute operation
+      long requestId = this.requestCounter++;
+      this.inFlight.put(requestId, new Item(msg.fromKey, null));
+      this.scheduleTimeout(requestId);
+      System.out.println("[" + this.getSelf().path().name() + "] [onScan] Client: keys " + msg.fromKey + ".." + msg.toKey);
+
+      // model a random network/processing delay
+      try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
+      catch (InterruptedException e) { e.printStackTrace(); }
+
+      ActorRef coordinator = this.chooseCoordinator(msg.fromKey, msg.coordinator, false);
+      coordinator.tell(new Message.ScanRequest(this.getSelf().path().name(), requestId, msg.fromKey, msg.toKey, msg.limit, SCAN_CREDITS), this.getSelf());
+    } else{
+      //If too many operations are executing, stop and return the message
+      System.out.println("ERR: ongoing operations, scan " + msg.fromKey + ".." + msg.toKey);
+    }
+  }
+
+  // A page of a scan: once it is processed, the client grants the coordinator a credit for another page
+  private void onScanPage(ClientMessage.ScanPage msg){
+    if(msg.result == Result.SUCCESS) {
+      System.out.println("[" + this.getSelf().path().name() + "] [onScanPage] Client: " + msg.items);
+    } else {
+      System.out.println("[" + this.getSelf().path().name() + "] [onScanPage] Client: ERROR!");
+      this.invalidateRing();
+    }
+
+    if(msg.last) {
+      //The operation is over
+      this.completeRequest(msg.requestId);
+    } else {
+      //The scan is progressing: its timeout starts again
+      this.scheduleTimeout(msg.requestId);
+      this.getSender().tell(new Message.ScanCredit(msg.scanId), this.getSelf());
+    }
+  }
+
+  // The node asked for the ring sends the list of the active nodes
+  private void onResActiveNodeList(Message.ResActiveNodeList msg){
+    this.ringRequested = false;
+    if(msg.activeNodes.isEmpty()){
+      return;
+    }
+    this.ring = new HashMap<>(msg.activeNodes);   // the message holds a view of the map of the node
+    this.routingTable = new RoutingTable(this.ring.keySet(), this.N, this.config.tokensPerNode, this.config.partitioner);
+    System.out.println("[" + this.getSelf().path().name() + "] [onResActiveNodeList] Client: ring of " + this.ring.size() + " nodes");
+  }
+
   /*======================*/
 
+  // Choose the coordinator of a request on the item with the given key.
+  // While the ring is unknown the request goes to the node named by the caller, which is also asked for
+  // the ring. Otherwise the coordinator is a node of the preference list of the item: the first one for
+  // the updates, so that the concurrent updates of an item meet on the same node and contend for its
+  // lock first, and a random one for the reads, which spreads them over the replicas
+  private ActorRef chooseCoordinator(int itemKey, ActorRef named, boolean update){
+    if(this.N <= 0){
+      return named;
+    }
+    if(this.routingTable == null){
+      if(!this.ringRequested){
+        this.ringRequested = true;
+        named.tell(new Message.ReqActiveNodeList(), this.getSelf());
+      }
+      return named;
+    }
+
+    int[] preferenceList = this.routingTable.getPreferenceList(itemKey);
+    if(preferenceList.length == 0){
+      return named;
+    }
+    int node = update ? preferenceList[0] : preferenceList[rnd.nextInt(preferenceList.length)];
+    ActorRef coordinator = this.ring.get(node);
+    return coordinator != null ? coordinator : named;
+  }
+
+  // The result of an operation has not arrived in time: the coordinator may have crashed, so the
+  // operation is given up and the ring is fetched again
+  private void onRequestTimeout(ClientMessage.RequestTimeout msg){
+    this.timeouts.remove(msg.requestId);
+    if(this.inFlight.remove(msg.requestId) != null){
+      System.out.println("[" + this.getSelf().path().name() + "] [onRequestTimeout] Client: TIMEOUT of operation " + msg.requestId);
+      this.invalidateRing();
+    }
+  }
+
+  // (re)start the timeout of an operation; it is longer than the one of the nodes, which answer with an
+  // error when their own timeout expires
+  private void scheduleTimeout(long requestId){
+    Cancellable timeout = getContext().system().scheduler().scheduleOnce(
+            Duration.create(CLIENT_TIMEOUT_FACTOR * Main.T, TimeUnit.SECONDS),
+            this.getSelf(),
+            new ClientMessage.RequestTimeout(requestId),   // the message to send,
+            getContext().system().dispatcher(), this.getSelf()
+    );
+    Cancellable previous = this.timeouts.put(requestId, timeout);
+    if(previous != null){
+      previous.cancel();
+    }
+  }
+
+  // the result of an operation has arrived
+  private void completeRequest(long requestId){
+    this.inFlight.remove(requestId);
+    Cancellable timeout = this.timeouts.remove(requestId);
+    if(timeout != null){
+      timeout.cancel();
+    }
+  }
+
+  // The ring may have changed (join, leave, crash): fetch it again before the next request
+  private void invalidateRing(){
+    this.ring = null;
+    this.routingTable = null;
+    this.ringRequested = false;  // the node asked before may have crashed without answering
+  }
+
 }
 
@@ -1,8 +1,11 @@
 package it.unitn.ds1;
 import akka.actor.ActorRef;
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
-enum Result { SUCCESS, ERROR }
+enum Result { SUCCESS, ERROR, CONFLICT }
 
 public class ClientMessage{
     // This class represents a message to request a get operation
@@ -16,32 +19,139 @@ public class ClientMessage{
     }
 
     // This class represents a message to return the response of a get operation
+    // siblings: concurrent versions of the item (VECTOR_CLOCK write protocol), empty if there is only one version.
+    // With VECTOR_CLOCK item.clock descends from all the versions read: it is the context of the next update
+    // requestId: the id the client has given to the request (Message.GetRequest)
     public static class GetResult implements Serializable {
         public final Result result;  //Operation succeeds or error
         public final Item item;
-        public GetResult(Result result, Item item) {
+        public final List<Item> siblings;
+        public final long requestId;
+        public GetResult(Result result, Item item, long requestId) {
+            this(result, item, Collections.emptyList(), requestId);
+        }
+        public GetResult(Result result, Item item, List<Item> siblings, long requestId) {
             this.result = result;
             this.item = item;
+            this.siblings = siblings;
+            this.requestId = requestId;
         }
     }
 
     // This class represents the request message to update an item
+    // expectedVersion: the update is applied only if the newest version of the item is expectedVersion (0 if the
+    // item must not exist), otherwise the result is CONFLICT with the version found; null for an unconditional
+    // update. Conditional updates need the QUORUM_LOCK write protocol
     public static class Update implements Serializable {
         public final Item item;
         public final ActorRef coordinator; //Node responsible for the update operation
+        public final Long expectedVersion;
+        // with the VECTOR_CLOCK write protocol, item.clock is the context of the update: the clock of the
+        // versions the client has read (the client sets it), null if the client has not read the item
         public Update(Item item, ActorRef coordinator) {
+            this(item, coordinator, null);
+        }
+        public Update(Item item, ActorRef coordinator, Long expectedVersion) {
             this.item = item;
             this.coordinator = coordinator;
+            this.expectedVersion = expectedVersion;
         }
     }
 
-    // This class represents a message to get return the result of an update of an item
+    // This class represents a message to get return the result of an update of an item.
+    // With result CONFLICT, item holds the version of the item found by the conditional update (no value)
+    // requestId: the id the client has given to the request (Message.UpdateRequest)
     public static class UpdateResult implements Serializable {
         public final Result result; //Operation succeeds or error
         public final Item item;
-        public UpdateResult(Result result, Item item) {
+        public final long requestId;
+        public UpdateResult(Result result, Item item, long requestId) {
             this.result = result;
             this.item = item;
+            this.requestId = requestId;
+        }
+    }
+
+    // This class represents a message to request a get of several items: the coordinator groups the reads
+    // of all the items by replica
+    public static class MultiGet implements Serializable {
+        public final List<Item> items;
+        public final ActorRef coordinator; //Node responsible for the get operation
+        public MultiGet(List<Item> items, ActorRef coordinator) {
+            this.items = items;
+            this.coordinator = coordinator;
+        }
+    }
+
+    // This class represents a message to return the responses of a multi get, one for every key: some
+    // keys may succeed and the others fail
+    public static class MultiGetResult implements Serializable {
+        public final Map<Integer, GetResult> results;
+        public final long requestId;
+        public MultiGetResult(Map<Integer, GetResult> results, long requestId) {
+            this.results = results;
+            this.requestId = requestId;
+        }
+    }
+
+    // This class represents the request message to update several items
+    public static class MultiUpdate implements Serializable {
+        public final List<Item> items;
+        public final ActorRef coordinator; //Node responsible for the update operation
+        public MultiUpdate(List<Item> items, ActorRef coordinator) {
+            this.items = items;
+            this.coordinator = coordinator;
+        }
+    }
+
+    // This class represents a message to return the results of a multi update, one for every key
+    public static class MultiUpdateResult implements Serializable {
+        public final Map<Integer, UpdateResult> results;
+        public final long requestId;
+        public MultiUpdateResult(Map<Integer, UpdateResult> results, long requestId) {
+            this.results = results;
+            this.requestId = requestId;
+        }
+    }
+
+    // This class represents a message to request the items whose key k is such that fromKey <= k <= toKey,
+    // at most limit items: the ones with the smallest keys. The items are returned in pages (ScanPage), in key order
+    public static class Scan implements Serializable {
+        public final int fromKey;
+        public final int toKey;
+        public final int limit;
+        public final ActorRef coordinator; //Node responsible for the scan
+        public Scan(int fromKey, int toKey, int limit, ActorRef coordinator) {
+            this.fromKey = fromKey;
+            this.toKey = toKey;
+            this.limit = limit;
+            this.coordinator = coordinator;
+        }
+    }
+
+    // This class represents a page of the items of a scan. The coordinator sends a new page only when the client
+    // has granted it a credit (Message.ScanCredit); last is true for the last page, or if the scan has failed.
+    // The items are in key order with the RAW partitioner; with MURMUR3 they are in key order within a page
+    public static class ScanPage implements Serializable {
+        public final Result result;  //Operation succeeds or error
+        public final List<Item> items;
+        public final boolean last;
+        public final long scanId;    //id of the scan on the coordinator, for the credits
+        public final long requestId;
+        public ScanPage(Result result, List<Item> items, boolean last, long scanId, long requestId) {
+            this.result = result;
+            this.items = items;
+            this.last = last;
+            this.scanId = scanId;
+            this.requestId = requestId;
+        }
+    }
+
+    // The result of a request of the client has not arrived in time (the coordinator may have crashed)
+    public static class RequestTimeout implements Serializable {
+        public final long requestId;
+        public RequestTimeout(long requestId) {
+            this.requestId = requestId;
         }
     }
-}
\ No newline at end of file
+}
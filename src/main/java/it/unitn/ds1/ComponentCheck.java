@@ -0,0 +1,256 @@
+package it.unitn.ds1;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+    Checks of the components of a node which can be exercised without an actor system: every check
+    compares the component with a straightforward implementation of the same operation, or with the
+    expected result of a small example. A failed check throws an IllegalStateException.
+      - OpenAddressingItemStore: removal of keys whose probe sequences overlap
+      - SortedKeyIndex:          range queries over many blocks, with shared tokens and removals
+      - RoutingTable:            getArcsGained and splitRange, against the preference list of every token
+      - WriteAheadLog:           replay of a log which ends with a torn record or a corrupt record
+      - MerkleTree:              range, against the XOR of the leaves
+      - VectorClock:             descends, for ordered, equal and concurrent clocks
+
+    USAGE: gradle checkComponents
+ */
+public class ComponentCheck {
+
+  public static void main(String[] args) throws IOException {
+    checkItemStoreRemove();
+    checkSortedKeyIndex();
+    checkArcsGained();
+    checkSplitRange();
+    checkWriteAheadLogReplay();
+    checkMerkleTreeRange();
+    checkVectorClockDescends();
+    System.out.println("all the checks have passed");
+  }
+
+  // the store keeps its keys with linear probing: a removal must not break the probe sequence of the
+  // keys stored after the removed one
+  private static void checkItemStoreRemove() {
+    OpenAddressingItemStore store = new OpenAddressingItemStore(4);
+    Random rnd = new Random(1);
+    Set<Integer> expected = new HashSet<>();
+    for (int i = 0; i < 2000; i++) {
+      int k = rnd.nextInt(4000);
+      if (rnd.nextInt(3) == 0) {
+        check(store.remove(k) == expected.remove(k), "OpenAddressingItemStore.remove(" + k + ") result");
+      } else {
+        store.put(new Item(k, "VALUE" + k, i));
+        expected.add(k);
+      }
+    }
+    check(store.size() == expected.size(), "OpenAddressingItemStore size after the removals");
+    for (int k = 0; k < 4000; k++) {
+      check(store.containsKey(k) == expected.contains(k), "OpenAddressingItemStore key " + k + " after the removals");
+      if (expected.contains(k)) {
+        check(("VALUE" + k).equals(store.get(k).getValue()), "OpenAddressingItemStore value of key " + k);
+      } else {
+        check(store.get(k) == null && store.getVersion(k) == -1, "OpenAddressingItemStore removed key " + k);
+      }
+    }
+    int[] range = store.keysInTokenRange(0, 1999);
+    check(range.length == expected.stream().filter(k -> k < 2000).count(), "OpenAddressingItemStore keysInTokenRange after the removals");
+    System.out.println("OpenAddressingItemStore: ok");
+  }
+
+  // entries are ordered by (token, key): keys which share a token are all kept
+  private static void checkSortedKeyIndex() {
+    SortedKeyIndex index = new SortedKeyIndex();
+    TreeSet<long[]> expected = new TreeSet<>((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+    Random rnd = new Random(2);
+    for (int k = 0; k < 3000; k++) {
+      long token = rnd.nextInt(500) - 250;   // few tokens: many keys share the same one
+      check(index.add(token, k), "SortedKeyIndex.add of a new key");
+      check(!index.add(token, k), "SortedKeyIndex.add of a key already in the index");
+      expected.add(new long[]{token, k});
+    }
+    for (long[] entry : new TreeSet<>(expected)) {
+      if (rnd.nextInt(4) == 0) {
+        check(index.remove(entry[0], (int) entry[1]), "SortedKeyIndex.remove of a key in the index");
+        expected.remove(entry);
+      }
+    }
+    check(!index.remove(1000, 0), "SortedKeyIndex.remove of a key not in the index");
+    check(index.size() == expected.size(), "SortedKeyIndex size");
+
+    for (int i = 0; i < 200; i++) {
+      long low = rnd.nextInt(600) - 300;
+      long high = low + rnd.nextInt(200);
+      int[] keys = expected.subSet(new long[]{low, Integer.MIN_VALUE}, true, new long[]{high, Integer.MAX_VALUE}, true)
+              .stream().mapToInt(entry -> (int) entry[1]).toArray();
+      check(Arrays.equals(index.range(low, high), keys), "SortedKeyIndex.range(" + low + ", " + high + ")");
+    }
+    check(index.range(10, 9).length == 0, "SortedKeyIndex.range with low > high");
+    System.out.println("SortedKeyIndex: ok");
+  }
+
+  // a token is in the arcs gained by a node iff the node is responsible for it after the change and
+  // not before
+  private static void checkArcsGained() {
+    int n = 2;
+    RoutingTable before = new RoutingTable(Arrays.asList(10, 20, 30, 40), n);
+    RoutingTable after = new RoutingTable(Arrays.asList(10, 20, 25, 30, 40), n);
+    for (int node : new int[]{10, 20, 25, 30, 40}) {
+      long[] gained = RoutingTable.getArcsGained(before, after, node);
+      long[] lost = RoutingTable.getArcsGained(after, before, node);
+      for (int t = -5; t <= 55; t++) {
+        if (t % 5 == 0) {
+          continue;   // the bounds of the arcs are the tokens of the nodes: only the inner tokens are checked
+        }
+        boolean wasResponsible = RoutingTable.contains(before.getPreferenceListOfToken(t), node);
+        boolean isResponsible = RoutingTable.contains(after.getPreferenceListOfToken(t), node);
+        check(inArcs(gained, t) == (isResponsible && !wasResponsible), "getArcsGained of node " + node + " at token " + t);
+        check(inArcs(lost, t) == (wasResponsible && !isResponsible), "arcs lost by node " + node + " at token " + t);
+      }
+    }
+    System.out.println("RoutingTable.getArcsGained: ok");
+  }
+
+  // the parts cover the interval without gaps and the preference list does not change within a part
+  private static void checkSplitRange() {
+    RoutingTable table = new RoutingTable(Arrays.asList(10, 20, 30, 40), 2, 3, Partitioner.RAW);
+    long[][] intervals = {{0, 50}, {15, 25}, {12, 18}, {Integer.MIN_VALUE, Integer.MAX_VALUE}, {20, 20}};
+    for (long[] interval : intervals) {
+      long[] parts = table.splitRange(interval[0], interval[1]);
+      check(parts.length >= 2 && parts[0] == interval[0] && parts[parts.length - 1] == interval[1], "splitRange bounds of " + Arrays.toString(interval));
+      for (int i = 0; i < parts.length; i += 2) {
+        check(parts[i] <= parts[i + 1], "splitRange part " + i / 2 + " of " + Arrays.toString(interval));
+        if (i > 0) {
+          check(parts[i] == parts[i - 1] + 1, "splitRange gap before part " + i / 2 + " of " + Arrays.toString(interval));
+        }
+        int[] preferenceList = table.getPreferenceListOfToken(parts[i]);
+        check(Arrays.equals(preferenceList, table.getPreferenceListOfToken(parts[i + 1])), "splitRange preference list of part " + i / 2 + " of " + Arrays.toString(interval));
+        if (parts[i + 1] - parts[i] < 100) {
+          for (long t = parts[i]; t <= parts[i + 1]; t++) {
+            check(Arrays.equals(preferenceList, table.getPreferenceListOfToken(t)), "splitRange preference list at token " + t);
+          }
+        }
+      }
+    }
+    System.out.println("RoutingTable.splitRange: ok");
+  }
+
+  // the records before a torn or corrupt record are replayed, the log is cut there and new records
+  // are appended after the cut
+  private static void checkWriteAheadLogReplay() throws IOException {
+    File directory = Files.createTempDirectory("ds1-check").toFile();
+    File file = new File(directory, "check.wal");
+    try {
+      WriteAheadLog wal = new WriteAheadLog(file, 100);
+      wal.append(new Item(1, "A", 1));
+      wal.append(new Item(2, null, 1));
+      wal.append(new Item(1, "B", 2));
+      wal.commit();
+      wal.close();
+      long validLength = file.length();
+
+      // torn record: the length of the payload and part of it
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.seek(validLength);
+        raf.writeInt(40);
+        raf.writeInt(3);
+        raf.writeLong(1);
+      }
+      wal = new WriteAheadLog(file, 100);
+      ItemStore store = new OpenAddressingItemStore();
+      check(wal.replay(store) == 3, "WriteAheadLog.replay records before a torn record");
+      check(file.length() == validLength, "WriteAheadLog.replay cut of a torn record");
+      check("B".equals(store.get(1).getValue()) && store.getVersion(1) == 2, "WriteAheadLog.replay newest version of an item");
+      check(store.get(2).getValue() == null, "WriteAheadLog.replay null value");
+
+      // the log goes on after the cut; then a complete record with a wrong CRC
+      wal.append(new Item(3, "C", 1));
+      wal.commit();
+      wal.close();
+      long lengthWithC = file.length();
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.seek(lengthWithC);
+        raf.writeInt(17);
+        raf.writeInt(4);
+        raf.writeLong(1);
+        raf.writeInt(1);
+        raf.writeByte('D');
+        raf.writeInt(0);   // CRC
+      }
+      wal = new WriteAheadLog(file, 100);
+      store = new OpenAddressingItemStore();
+      check(wal.replay(store) == 4, "WriteAheadLog.replay records before a corrupt record");
+      check(file.length() == lengthWithC, "WriteAheadLog.replay cut of a corrupt record");
+      check("C".equals(store.get(3).getValue()) && !store.containsKey(4), "WriteAheadLog.replay items before a corrupt record");
+      wal.close();
+    } finally {
+      file.delete();
+      directory.delete();
+    }
+    System.out.println("WriteAheadLog.replay: ok");
+  }
+
+  private static void checkMerkleTreeRange() {
+    for (Partitioner partitioner : Partitioner.values()) {
+      MerkleTree tree = new MerkleTree(partitioner);
+      Random rnd = new Random(3);
+      for (int k = 0; k < 5000; k++) {
+        tree.update(partitioner.token(k), k, -1, 1);
+      }
+      for (int i = 0; i < 300; i++) {
+        int first = rnd.nextInt(MerkleTree.LEAVES);
+        int last = first + rnd.nextInt(MerkleTree.LEAVES - first);
+        long hash = 0;
+        for (int leaf = first; leaf <= last; leaf++) {
+          hash ^= tree.leaf(leaf);
+        }
+        check(tree.range(first, last) == hash, partitioner + " MerkleTree.range(" + first + ", " + last + ")");
+      }
+      check(tree.range(0, MerkleTree.LEAVES - 1) == tree.root(), partitioner + " MerkleTree.range of all the leaves");
+      for (int k = 0; k < 5000; k++) {
+        tree.update(partitioner.token(k), k, 1, -1);
+      }
+      check(tree.root() == 0, partitioner + " MerkleTree root after the removal of every item");
+    }
+    System.out.println("MerkleTree.range: ok");
+  }
+
+  private static void checkVectorClockDescends() {
+    VectorClock empty = new VectorClock();
+    VectorClock a = empty.with(10, 1);
+    VectorClock b = a.with(20, 1);
+    VectorClock c = empty.with(20, 2);
+    check(a.descends(empty) && !empty.descends(a), "VectorClock.descends of the empty clock");
+    check(b.descends(a) && !a.descends(b), "VectorClock.descends of a following version");
+    check(a.descends(empty.with(10, 1)) && empty.with(10, 1).descends(a), "VectorClock.descends of equal clocks");
+    check(!b.descends(c) && !c.descends(b), "VectorClock.descends of concurrent clocks");
+    VectorClock merged = b.merge(c);
+    check(merged.descends(b) && merged.descends(c) && merged.get(20) == 2, "VectorClock.descends of a merged clock");
+    System.out.println("VectorClock.descends: ok");
+  }
+
+  // true if the token is in one of the arcs [from, to) (format of RoutingTable.getArcs)
+  private static boolean inArcs(long[] arcs, long token) {
+    for (int i = 0; i < arcs.length; i += 2) {
+      long from = arcs[i];
+      long to = arcs[i + 1];
+      if (from == to || (from < to ? token >= from && token < to : token >= from || token < to)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void check(boolean condition, String what) {
+    if (!condition) {
+      throw new IllegalStateException("check failed: " + what);
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package it.unitn.ds1;
+
+// Hybrid logical clock used to stamp the writes of the HLC_LWW protocol.
+// A timestamp is a 64-bit number made of the physical time in milliseconds (upper bits) and a logical
+// counter (lower LOGICAL_BITS bits). The timestamps of a node are strictly increasing, they are greater
+// than every timestamp the node has received and they stay close to the physical time, so they order
+// the writes of different coordinators even if their clocks are slightly skewed (last writer wins).
+public class HybridLogicalClock {
+    private static final int LOGICAL_BITS = 16;
+
+    private long last;      // last timestamp generated or received
+
+    // timestamp of a new local event (a write stamped by the coordinator)
+    public long now(){
+        long physical = System.currentTimeMillis() << LOGICAL_BITS;
+        last = Math.max(last + 1, physical);
+        return last;
+    }
+
+    // merge a timestamp received from another node: the following timestamps will be greater
+    public void update(long remote){
+        last = Math.max(last, remote);
+    }
+}
@@ -3,7 +3,8 @@ package it.unitn.ds1;
 public class Item {
     int key;
     String value;
-    int version;
+    long version;
+    VectorClock clock;  // vector clock of the version (VECTOR_CLOCK write protocol), null if the item has none
 
     public Item(int _key, String _value){
         key = _key;
@@ -11,7 +12,7 @@ public class Item {
         version = 0;
     }
 
-    public Item(int _key, String _value, int _version){
+    public Item(int _key, String _value, long _version){
         key = _key;
         value = _value;
         version = _version;
@@ -19,6 +20,7 @@ public class Item {
 
     public Item(Item that){
         this(that.getKey(), that.getValue(), that.getVersion());
+        clock = that.getClock();
     }
 
     public void setKey(int _key){
@@ -29,7 +31,11 @@ public class Item {
         value = _value;
     }
 
-    public void setVersion(int _version){ version = _version; }
+    public void setVersion(long _version){ version = _version; }
+
+    public void setClock(VectorClock _clock){
+        clock = _clock;
+    }
 
     public int getKey(){
         return key;
@@ -39,16 +45,21 @@ public class Item {
         return value;
     }
 
-    public int getVersion(){
+    public long getVersion(){
         return version;
     }
 
+    public VectorClock getClock(){
+        return clock;
+    }
+
     @Override
     public String toString() {
         return "Item{" +
                 "key=" + key +
                 ", value='" + value + '\'' +
                 ", version=" + version +
+                (clock != null ? ", clock=" + clock : "") +
                 '}';
     }
 }
@@ -0,0 +1,65 @@
+package it.unitn.ds1;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+// Storage used by a node to keep the data items it is responsible for.
+// Items are identified by their integer key. Implementations do not keep references to the
+// Item objects they receive: put() copies the fields of the item and get() materializes a new
+// Item, so callers are free to modify the returned objects.
+public interface ItemStore {
+
+    // return a copy of the item with the given key, null if the item is not stored
+    Item get(int key);
+
+    // return the version of the item with the given key, -1 if the item is not stored
+    long getVersion(int key);
+
+    boolean containsKey(int key);
+
+    // insert the item or overwrite the one with the same key
+    void put(Item item);
+
+    // remove the item with the given key; return true if the item was stored
+    boolean remove(int key);
+
+    int size();
+
+    void clear();
+
+    // return the keys of the stored items (the array is a copy)
+    int[] keys();
+
+    // return the keys of the stored items whose token t on the ring (see Partitioner) is such that
+    // low <= t <= high, in token order
+    int[] keysInTokenRange(long low, long high);
+
+    // release the resources of the store (files, threads); the node calls it when it stops
+    default void close(){}
+
+    default boolean isEmpty(){
+        return size() == 0;
+    }
+
+    // boxed copy of keys(), used to build the messages which carry sets of item keys
+    default Set<Integer> keySet(){
+        int[] keys = keys();
+        Set<Integer> keySet = new HashSet<>(keys.length * 2);
+        for(int k : keys){
+            keySet.add(k);
+        }
+        return keySet;
+    }
+
+    // copy of the stored items
+    default Collection<Item> values(){
+        int[] keys = keys();
+        Collection<Item> values = new ArrayList<>(keys.length);
+        for(int k : keys){
+            values.add(get(k));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,136 @@
+package it.unitn.ds1;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/*
+    Microbenchmark of the item storage of a node: it compares the HashMap<Integer, Item> that was
+    used by Node.items with the OpenAddressingItemStore and the OffHeapItemStore.
+    For each implementation it measures the retained heap after loading the items and the
+    throughput of the operations performed by the message handlers:
+      - put        (onWrite, onUpdateVersion)
+      - getVersion (onVersion, onUpdateRequest)
+      - get        (onRead, onGetRequest)
+
+    USAGE: gradle benchmarkItemStore [--args="<number of items> <number of lookups>"]
+ */
+public class ItemStoreBenchmark {
+  private static final int ROUNDS = 5;  // the first round is a warm-up and it is not reported
+  private static Object sink;
+
+  public static void main(String[] args) {
+    int nItems = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    int nLookups = args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000;
+
+    // item keys are partly sequential (ingest jobs) and partly random
+    Random rnd = new Random(42);
+    int[] keys = new int[nItems];
+    for (int i = 0; i < nItems; i++) {
+      keys[i] = (i % 2 == 0) ? i : rnd.nextInt(Integer.MAX_VALUE);
+    }
+    int[] lookups = new int[nLookups];
+    for (int i = 0; i < nLookups; i++) {
+      lookups[i] = keys[rnd.nextInt(nItems)];
+    }
+
+    System.out.println("items: " + nItems + ", lookups: " + nLookups);
+    System.out.println("HashMap<Integer, Item>:  retained heap " + retainedHeapMB(() -> loadHashMap(keys)) + " MB");
+    System.out.println("OpenAddressingItemStore: retained heap " + retainedHeapMB(() -> loadStore(new OpenAddressingItemStore(), keys)) + " MB");
+    System.out.println("OffHeapItemStore:        retained heap " + retainedHeapMB(() -> loadStore(new OffHeapItemStore(), keys)) + " MB");
+
+    for (int round = 0; round < ROUNDS; round++) {
+      boolean report = round > 0;
+
+      long start = System.nanoTime();
+      Map<Integer, Item> map = loadHashMap(keys);
+      long mapPut = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      long mapVersions = 0;
+      for (int k : lookups) {
+        Item item = map.get(k);
+        mapVersions += item != null ? item.getVersion() : -1;
+      }
+      long mapGetVersion = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      long mapValues = 0;
+      for (int k : lookups) {
+        Item item = map.get(k);
+        mapValues += new Item(item).getValue().length();   // the handlers copy the stored item before sending it
+      }
+      long mapGet = System.nanoTime() - start;
+
+      if (report) {
+        System.out.println("---- round " + round);
+        System.out.printf("HashMap          put %8.1f ns/op   getVersion %8.1f ns/op   get %8.1f ns/op%n",
+                (double) mapPut / nItems, (double) mapGetVersion / nLookups, (double) mapGet / nLookups);
+      }
+      measureStore("OpenAddressing  ", new OpenAddressingItemStore(), keys, lookups, mapVersions, mapValues, report);
+      measureStore("OffHeap         ", new OffHeapItemStore(), keys, lookups, mapVersions, mapValues, report);
+    }
+  }
+
+  private static void measureStore(String name, ItemStore store, int[] keys, int[] lookups, long expectedVersions, long expectedValues, boolean report) {
+    long start = System.nanoTime();
+    loadStore(store, keys);
+    long put = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    long versions = 0;
+    for (int k : lookups) {
+      versions += store.getVersion(k);
+    }
+    long getVersion = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    long values = 0;
+    for (int k : lookups) {
+      values += store.get(k).getValue().length();
+    }
+    long get = System.nanoTime() - start;
+
+    if (versions != expectedVersions || values != expectedValues) {
+      throw new IllegalStateException(name.trim() + " returned different results from the HashMap");
+    }
+
+    if (report) {
+      System.out.printf("%s put %8.1f ns/op   getVersion %8.1f ns/op   get %8.1f ns/op%n",
+              name, (double) put / keys.length, (double) getVersion / lookups.length, (double) get / lookups.length);
+    }
+  }
+
+  private static Map<Integer, Item> loadHashMap(int[] keys) {
+    Map<Integer, Item> map = new HashMap<>();
+    for (int k : keys) {
+      map.put(k, new Item(k, "VALUE" + k, 1));
+    }
+    return map;
+  }
+
+  private static ItemStore loadStore(ItemStore store, int[] keys) {
+    for (int k : keys) {
+      store.put(new Item(k, "VALUE" + k, 1));
+    }
+    return store;
+  }
+
+  // heap retained by the object built by the loader (the value strings are included)
+  private static long retainedHeapMB(Supplier<Object> loader) {
+    long before = usedHeap();
+    sink = loader.get();  // keep the structure reachable until the measure is taken
+    long after = usedHeap();
+    sink = null;
+    return (after - before) / (1024 * 1024);
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,51 @@
+package it.unitn.ds1;
+
+import akka.actor.ActorRef;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Latency of the replies of the peers, used by the hedged reads.
+// For every peer it keeps an exponentially weighted moving average of the latency of its replies, which
+// ranks the replicas, and for all the peers together the last SAMPLES latencies, from which the
+// percentile used as hedge delay is computed.
+public class LatencyTracker {
+    private static final int SAMPLES = 256;
+    private static final double ALPHA = 0.2;    // weight of the last sample in the average
+
+    private final Map<ActorRef, Double> averages;
+    private final long[] samples;               // circular buffer of the last latencies (ms)
+    private int count;                          // samples in the buffer
+    private int next;                           // position of the next sample
+
+    public LatencyTracker(){
+        this.averages = new HashMap<>();
+        this.samples = new long[SAMPLES];
+    }
+
+    public void record(ActorRef peer, long latencyMs){
+        averages.merge(peer, (double) latencyMs, (old, sample) -> old + ALPHA * (sample - old));
+        samples[next] = latencyMs;
+        next = (next + 1) % SAMPLES;
+        if(count < SAMPLES){
+            count++;
+        }
+    }
+
+    // average latency of the peer, 0 if it has never replied (an unknown peer is tried first)
+    public double getAverage(ActorRef peer){
+        return averages.getOrDefault(peer, 0.0);
+    }
+
+    // latency under which the given percentile (0-100) of the last replies has arrived, defaultMs if there is no sample
+    public long getPercentile(double percentile, long defaultMs){
+        if(count == 0){
+            return defaultMs;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+}
@@ -0,0 +1,348 @@
+package it.unitn.ds1;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// ItemStore based on a log-structured merge tree, for nodes whose items do not fit in the heap.
+//  - writes and removals go to the memtable, a sorted in-memory map; a removal is a tombstone record
+//  - when the memtable reaches memtableLimit records it is flushed in a new immutable LsmSegment
+//  - a lookup checks the memtable and then the segments from the newest to the oldest; the bloom
+//    filter of each segment lets the lookup skip the segments which do not contain the key
+//  - when there are compactionThreshold segments, a background thread merges them in a single
+//    segment, keeping the newest record of each key and dropping the tombstones
+// The key and the version of every live item are also kept in memory (versionIndex): getVersion(),
+// containsKey(), keys() and keysInTokenRange() never read the segments, so onVersion and onUpdateRequest stay cheap.
+//
+// The segments are working files of the store: they are deleted by clear() and they are not
+// reopened when the node restarts (durability is provided by the write-ahead log).
+public class LsmItemStore implements ItemStore {
+    private final File directory;
+    private final int memtableLimit;
+    private final int compactionThreshold;
+
+    private final VersionIndex versionIndex;
+    private TreeMap<Integer, LsmSegment.Record> memtable;
+    private volatile List<LsmSegment> segments;     // newest first; replaced (never modified) under "lock"
+    private final ExecutorService compactor;
+    private final Object lock = new Object();
+    private boolean compactionRunning;              // guarded by "lock"
+    private long epoch;                             // incremented by clear(), guarded by "lock"
+    private long nextSegmentId;                     // guarded by "lock"
+
+    public LsmItemStore(File directory, int memtableLimit, int compactionThreshold, Partitioner partitioner){
+        this.directory = directory;
+        this.memtableLimit = memtableLimit;
+        this.compactionThreshold = Math.max(compactionThreshold, 2);
+        this.versionIndex = new VersionIndex(partitioner);
+        this.memtable = new TreeMap<>();
+        this.segments = Collections.emptyList();
+        this.compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "lsm-compaction-" + directory.getName());
+            t.setDaemon(true);
+            return t;
+        });
+
+        if(!directory.exists() && !directory.mkdirs()){
+            System.out.println("[LsmItemStore] cannot create the directory " + directory);
+        }
+        // remove the segments left by a previous execution
+        File[] oldSegments = directory.listFiles((dir, name) -> name.endsWith(".seg"));
+        if(oldSegments != null){
+            for(File f : oldSegments){
+                f.delete();
+            }
+        }
+    }
+
+    @Override
+    public Item get(int key){
+        if(!versionIndex.containsKey(key)){
+            return null;
+        }
+
+        LsmSegment.Record r = memtable.get(key);
+        if(r == null){
+            for(LsmSegment segment : segments){
+                r = segment.find(key);
+                if(r != null){
+                    break;
+                }
+            }
+        }
+        if(r == null || r.tombstone){
+            return null;
+        }
+        return new Item(key, r.value, r.version);
+    }
+
+    @Override
+    public long getVersion(int key){
+        return versionIndex.getVersion(key);
+    }
+
+    @Override
+    public boolean containsKey(int key){
+        return versionIndex.containsKey(key);
+    }
+
+    @Override
+    public void put(Item item){
+        memtable.put(item.getKey(), new LsmSegment.Record(item.getKey(), item.getVersion(), item.getValue(), false));
+        versionIndex.put(new Item(item.getKey(), null, item.getVersion()));
+        flushIfFull();
+    }
+
+    @Override
+    public boolean remove(int key){
+        if(!versionIndex.remove(key)){
+            return false;
+        }
+        memtable.put(key, new LsmSegment.Record(key, 0, null, true));
+        flushIfFull();
+        return true;
+    }
+
+    @Override
+    public int size(){
+        return versionIndex.size();
+    }
+
+    @Override
+    public void clear(){
+        List<LsmSegment> dropped;
+        synchronized (lock) {
+            epoch++;  // the result of a running compaction is discarded
+            dropped = segments;
+            segments = Collections.emptyList();
+        }
+        memtable = new TreeMap<>();
+        versionIndex.clear();
+        deleteSegments(dropped);
+    }
+
+    @Override
+    public int[] keys(){
+        return versionIndex.keys();
+    }
+
+    @Override
+    public int[] keysInTokenRange(long low, long high){
+        return versionIndex.keysInTokenRange(low, high);
+    }
+
+    @Override
+    public void close(){
+        compactor.shutdownNow();
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder sb = new StringBuilder("{");
+        for(int k : keys()){
+            if(sb.length() > 1){
+                sb.append(", ");
+            }
+            sb.append(k).append('=').append(get(k));
+        }
+        return sb.append("} (lsm: ").append(memtable.size()).append(" records in the memtable, ")
+                 .append(segments.size()).append(" segments)").toString();
+    }
+
+    /*===FLUSH AND COMPACTION===*/
+
+    private void flushIfFull(){
+        if(memtable.size() < memtableLimit){
+            return;
+        }
+
+        try {
+            LsmSegment segment = LsmSegment.write(newSegmentFile(), memtable.values().iterator(), memtable.size());
+            boolean compact;
+            List<LsmSegment> toMerge;
+            long currentEpoch;
+            synchronized (lock) {
+                List<LsmSegment> updated = new ArrayList<>(segments.size() + 1);
+                updated.add(segment);
+                updated.addAll(segments);
+                segments = Collections.unmodifiableList(updated);
+
+                compact = !compactionRunning && segments.size() >= compactionThreshold;
+                compactionRunning |= compact;
+                toMerge = segments;
+                currentEpoch = epoch;
+            }
+            memtable = new TreeMap<>();
+
+            if(compact){
+                compactor.execute(() -> compact(toMerge, currentEpoch));
+            }
+        } catch (IOException e) {
+            // the records stay in the memtable: the flush is attempted again by the next write
+            e.printStackTrace();
+        }
+    }
+
+    // merge all the segments of toMerge (which contains the oldest segment, hence the tombstones can be dropped)
+    private void compact(List<LsmSegment> toMerge, long startEpoch){
+        LsmSegment merged = null;
+        try {
+            int expected = 0;
+            for(LsmSegment s : toMerge){
+                expected += s.size();
+            }
+            merged = LsmSegment.write(newSegmentFile(), new MergeIterator(toMerge), expected);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        List<LsmSegment> obsolete = toMerge;
+        List<LsmSegment> nextMerge = null;
+        long nextEpoch;
+        synchronized (lock) {
+            compactionRunning = false;
+            if(merged == null){
+                return;
+            }
+            if(epoch != startEpoch){  // the store has been cleared in the meantime
+                obsolete = Collections.singletonList(merged);
+            } else {
+                // the segments flushed during the compaction are newer than the merged one
+                List<LsmSegment> updated = new ArrayList<>(segments.subList(0, segments.size() - toMerge.size()));
+                updated.add(merged);
+                segments = Collections.unmodifiableList(updated);
+            }
+
+            // enough segments have been flushed during the compaction: merge them again
+            if(segments.size() >= compactionThreshold){
+                compactionRunning = true;
+                nextMerge = segments;
+            }
+            nextEpoch = epoch;
+        }
+        deleteSegments(obsolete);
+
+        if(nextMerge != null){
+            compact(nextMerge, nextEpoch);
+        }
+    }
+
+    private File newSegmentFile(){
+        synchronized (lock) {
+            return new File(directory, String.format("%012d.seg", nextSegmentId++));
+        }
+    }
+
+    private static void deleteSegments(List<LsmSegment> obsolete){
+        for(LsmSegment s : obsolete){
+            try { s.delete(); }
+            catch (IOException e) { e.printStackTrace(); }
+        }
+    }
+
+    // k-way merge of segments sorted by key: for each key it returns the record of the newest segment,
+    // the tombstones are skipped
+    private static class MergeIterator implements Iterator<LsmSegment.Record> {
+        private static class Cursor {
+            final Iterator<LsmSegment.Record> it;
+            final int age;  // position of the segment in the list, 0 is the newest
+            LsmSegment.Record current;
+
+            Cursor(Iterator<LsmSegment.Record> it, int age){
+                this.it = it;
+                this.age = age;
+                this.current = it.next();
+            }
+        }
+
+        private final PriorityQueue<Cursor> queue;
+        private LsmSegment.Record next;
+
+        MergeIterator(List<LsmSegment> segments){
+            queue = new PriorityQueue<>((a, b) -> a.current.key != b.current.key ? Integer.compare(a.current.key, b.current.key)
+                                                                                   : Integer.compare(a.age, b.age));
+            for(int i = 0; i < segments.size(); i++){
+                Iterator<LsmSegment.Record> it = segments.get(i).iterator();
+                if(it.hasNext()){
+                    queue.add(new Cursor(it, i));
+                }
+            }
+            advance();
+        }
+
+        private void advance(){
+            next = null;
+            while(next == null && !queue.isEmpty()){
+                Cursor newest = queue.poll();
+                LsmSegment.Record r = newest.current;
+                moveOn(newest);
+                // skip the older records of the same key
+                while(!queue.isEmpty() && queue.peek().current.key == r.key){
+                    moveOn(queue.poll());
+                }
+                if(!r.tombstone){
+                    next = r;
+                }
+            }
+        }
+
+        private void moveOn(Cursor c){
+            if(c.it.hasNext()){
+                c.current = c.it.next();
+                queue.add(c);
+            }
+        }
+
+        @Override
+        public boolean hasNext(){
+            return next != null;
+        }
+
+        @Override
+        public LsmSegment.Record next(){
+            if(next == null){
+                throw new NoSuchElementException();
+            }
+            LsmSegment.Record r = next;
+            advance();
+            return r;
+        }
+    }
+
+    /*======================*/
+
+    // key -> version table of the live items (an open-addressing table without value column)
+    private static class VersionIndex extends AbstractOpenAddressingItemStore {
+        VersionIndex(Partitioner partitioner){
+            super(16, partitioner);
+        }
+
+        @Override
+        protected void resizeValues(int capacity, int[] destination){}
+
+        @Override
+        protected void storeValue(int slot, String value){}
+
+        @Override
+        protected String loadValue(int slot){
+            return null;
+        }
+
+        @Override
+        protected void releaseValue(int slot){}
+
+        @Override
+        protected void moveValue(int from, int to){}
+
+        @Override
+        protected void clearValues(){}
+    }
+}
@@ -0,0 +1,185 @@
+package it.unitn.ds1;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+
+// Immutable segment of an LsmItemStore: a file with the records sorted by key.
+//   record: [key][version][value length, NULL_VALUE if null, TOMBSTONE if the item was removed][value bytes]
+// The file is memory-mapped for reading, so the records do not occupy the Java heap.
+// The segment keeps in memory a sparse index (the offset of one record every SPARSE_INDEX_INTERVAL)
+// and a bloom filter of its keys, used to skip the segment when looking for a key it does not contain.
+public class LsmSegment {
+    private static final int SPARSE_INDEX_INTERVAL = 32;
+    private static final int NULL_VALUE = -1;
+    private static final int TOMBSTONE = -2;
+    private static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+
+    // a record of the LSM tree; it is also the entry of the memtable
+    public static class Record {
+        public final int key;
+        public final long version;
+        public final String value;
+        public final boolean tombstone;
+
+        public Record(int key, long version, String value, boolean tombstone){
+            this.key = key;
+            this.version = version;
+            this.value = value;
+            this.tombstone = tombstone;
+        }
+    }
+
+    private final File file;
+    private final MappedByteBuffer data;
+    private final int count;
+    private final int[] indexKeys;      // key of every SPARSE_INDEX_INTERVAL-th record
+    private final int[] indexOffsets;   // offset of the same records
+    private final BloomFilter bloom;
+
+    private LsmSegment(File file, MappedByteBuffer data, int count, int[] indexKeys, int[] indexOffsets, BloomFilter bloom){
+        this.file = file;
+        this.data = data;
+        this.count = count;
+        this.indexKeys = indexKeys;
+        this.indexOffsets = indexOffsets;
+        this.bloom = bloom;
+    }
+
+    // write the records, which must be sorted by key, in a new segment file
+    public static LsmSegment write(File file, Iterator<Record> records, int expectedCount) throws IOException {
+        int indexSize = (expectedCount + SPARSE_INDEX_INTERVAL - 1) / SPARSE_INDEX_INTERVAL;
+        int[] indexKeys = new int[indexSize];
+        int[] indexOffsets = new int[indexSize];
+        BloomFilter bloom = new BloomFilter(expectedCount, BLOOM_FALSE_POSITIVE_RATE);
+
+        int count = 0;
+        long offset = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            while(records.hasNext()){
+                Record r = records.next();
+                if(offset > Integer.MAX_VALUE){
+                    throw new IOException("segment larger than 2 GB");
+                }
+                if(count % SPARSE_INDEX_INTERVAL == 0){
+                    if(count / SPARSE_INDEX_INTERVAL == indexKeys.length){
+                        throw new IOException("more records than expected");
+                    }
+                    indexKeys[count / SPARSE_INDEX_INTERVAL] = r.key;
+                    indexOffsets[count / SPARSE_INDEX_INTERVAL] = (int) offset;
+                }
+                bloom.add(r.key);
+
+                byte[] value = r.value == null ? null : r.value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(r.key);
+                out.writeLong(r.version);
+                out.writeInt(r.tombstone ? TOMBSTONE : (value == null ? NULL_VALUE : value.length));
+                if(!r.tombstone && value != null){
+                    out.write(value);
+                }
+                offset += 2 * Integer.BYTES + Long.BYTES + (r.tombstone || value == null ? 0 : value.length);
+                count++;
+            }
+        }
+
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int usedIndex = (count + SPARSE_INDEX_INTERVAL - 1) / SPARSE_INDEX_INTERVAL;
+        return new LsmSegment(file, data, count,
+                              Arrays.copyOf(indexKeys, usedIndex), Arrays.copyOf(indexOffsets, usedIndex), bloom);
+    }
+
+    // return the record of the key, null if the segment does not contain it
+    public Record find(int key){
+        if(count == 0 || !bloom.mightContain(key)){
+            return null;
+        }
+
+        // last sparse index entry with a key <= key
+        int lo = 0, hi = indexKeys.length - 1, block = -1;
+        while(lo <= hi){
+            int mid = (lo + hi) >>> 1;
+            if(indexKeys[mid] <= key){
+                block = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if(block < 0){
+            return null;
+        }
+
+        // scan the block
+        ByteBuffer view = data.duplicate();
+        view.position(indexOffsets[block]);
+        int end = Math.min(count, (block + 1) * SPARSE_INDEX_INTERVAL);
+        for(int i = block * SPARSE_INDEX_INTERVAL; i < end; i++){
+            Record r = readRecord(view);
+            if(r.key == key){
+                return r;
+            }
+            if(r.key > key){
+                return null;
+            }
+        }
+        return null;
+    }
+
+    // iterate the records in key order
+    public Iterator<Record> iterator(){
+        ByteBuffer view = data.duplicate();
+        view.position(0);
+        return new Iterator<Record>() {
+            private int read = 0;
+
+            @Override
+            public boolean hasNext(){
+                return read < count;
+            }
+
+            @Override
+            public Record next(){
+                read++;
+                return readRecord(view);
+            }
+        };
+    }
+
+    public int size(){
+        return count;
+    }
+
+    public void delete() throws IOException {
+        // the mapping stays valid for the readers which still use it, until it is garbage collected
+        Files.deleteIfExists(file.toPath());
+    }
+
+    private static Record readRecord(ByteBuffer view){
+        int key = view.getInt();
+        long version = view.getLong();
+        int valueLength = view.getInt();
+        if(valueLength == TOMBSTONE){
+            return new Record(key, version, null, true);
+        }
+        String value = null;
+        if(valueLength != NULL_VALUE){
+            byte[] bytes = new byte[valueLength];
+            view.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return new Record(key, version, value, false);
+    }
+}
@@ -1,5 +1,8 @@
 package it.unitn.ds1;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import akka.actor.Actor;
 import akka.actor.ActorRef;
@@ -36,6 +39,9 @@ import akka.actor.ActorSystem;
 
     EXECUTION:  the execution1, that is started by default, shows a general and complete test of the project.
       It is possible to see a specific test, by uncommenting execution2, on how the replication with W quorum works.
+      The executions 3 to 7 each enable a group of the options of NodeConfig and end printing the counters of
+      the nodes: storage and durability (3), placement, multi-item requests and scans (4), availability and
+      repair of the replicas (5), the lock-free write protocols (6), the write queue and conditional updates (7).
       It is recommended to execute only one example at time since the output is very long.
 
  */
@@ -50,6 +56,12 @@ public class Main {
   public static void main(String[] args) {
     execution1(2,2,2); //Complete example
     //execution2(5,4,2); //Specific example of W quorum
+    //execution3(3,2,2); //LSM, off-heap storage, write-ahead log and snapshots
+    //execution4(3,2,2); //Virtual nodes, MURMUR3 partitioner, multi get/update and scans
+    //execution5(3,2,2); //Sloppy quorum, hedged and digest reads, read repair and anti-entropy
+    //execution6(3,2,2, WriteProtocol.HLC_LWW); //Concurrent updates with last writer wins
+    //execution6(3,2,2, WriteProtocol.VECTOR_CLOCK); //Concurrent updates with siblings
+    //execution7(3,2,2); //Write queue and conditional updates
 
     try {
       System.out.println(">>> Press ENTER to exit <<<");
@@ -1167,4 +1179,563 @@ public class Main {
     System.out.println("========================================\n\n");
 
   }
+
+  // Durability and storage: n1 and n2 keep their items in an LSM tree, n3 off-heap and n4 on the heap.
+  // n1 and n2 also write a log with group commit and periodic snapshots: when they crash they lose
+  // their memory and on recovery they rebuild their items from the snapshot and the log
+  private static void execution3(int n, int w, int r){
+    System.out.println("========================================");
+    System.out.println("START EXECUTION 3");
+    System.out.println("========================================\n\n");
+
+    ActorSystem system = ActorSystem.create("ds1-project-third-example");
+    int N = n; // degree of replication
+    int W = w; // write quorum
+    int R = r; // read quorum
+
+    // compilation time constants are not properly set
+    if(R + W <= N || W <= N/2){
+      System.out.println("Parameters N, W and R are set wrongly");
+      return;
+    }
+
+    // the files of the nodes are written in a new directory, so that no item of a previous run is replayed
+    String directory = System.getProperty("java.io.tmpdir") + "/ds1-execution3-" + System.currentTimeMillis();
+    NodeConfig durable = new NodeConfig()
+      .lsm(directory + "/lsm", 4, 2)
+      .writeAheadLog(directory + "/wal")
+      .groupCommit(4, 10)
+      .checkpoint(2 * T * 1000, 8);
+
+    System.out.println("========================================");
+    System.out.println("Create Nodes n1(key:10) and n2(key:20) with LSM storage and write-ahead log, n3(key:30) off-heap, n4(key:40) on the heap");
+    ActorRef n1 = system.actorOf(Node.props(N, R, W, T, durable),"n1");
+    ActorRef n2 = system.actorOf(Node.props(N, R, W, T, durable),"n2");
+    ActorRef n3 = system.actorOf(Node.props(N, R, W, T, new NodeConfig().storage(StorageType.OFF_HEAP)),"n3");
+    ActorRef n4 = system.actorOf(Node.props(N, R, W, T),"n4");
+
+    n1.tell(new Message.InitSystem(10), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+    n2.tell(new Message.JoinMsg(20, n1), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+    n3.tell(new Message.JoinMsg(30, n1), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+    n4.tell(new Message.JoinMsg(40, n1), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    n1.tell(new Message.PrintNodeList(), ActorRef.noSender());  // ask to print the current list of peers
+
+    System.out.println("========================================\n\n");
+
+    System.out.println("========================================");
+    System.out.println("Client c1 writes 12 items: the LSM memtables of n1 and n2 are flushed and compacted, their logs are checkpointed");
+    ActorRef c1 = system.actorOf(Client.props(),"c1");
+
+    for(int k = 1; k <= 12; k++){
+      c1.tell(new ClientMessage.Update(new Item(k * 4, "VALUE" + k * 4), n3), ActorRef.noSender());
+      try { Thread.sleep(SLEEPTIMESHORT); }
+      catch (InterruptedException e) { e.printStackTrace(); }
+    }
+
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    n1.tell(new Message.PrintItemList(), ActorRef.noSender());  // ask to print the current list of item
+    n2.tell(new Message.PrintItemList(), ActorRef.noSender());  // ask to print the current list of item
+
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    System.out.println("========================================\n\n");
+
+    System.out.println("========================================");
+    System.out.println("Node n2 crashes and loses its memory, client c1 updates two of its items, then n2 recovers from its snapshot and log");
+
+    n2.tell(new Message.CrashMsg(), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    c1.tell(new ClientMessage.Update(new Item(12, "VALUE12-NEW"), n1), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+    c1.tell(new ClientMessage.Update(new Item(16, "VALUE16-NEW"), n1), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    n2.tell(new Message.RecoveryMsg(n1), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    n2.tell(new Message.PrintItemList(), ActorRef.noSender());  // the items of n2, with the new versions fetched from its peers
+
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    System.out.println("========================================\n\n");
+
+    System.out.println("========================================");
+    System.out.println("Client c1 reads the items from each kind of storage; finally each node prints its counters");
+
+    c1.tell(new ClientMessage.Get(new Item(12, null), n2), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+    c1.tell(new ClientMessage.Get(new Item(36, null), n3), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+    c1.tell(new ClientMessage.Get(new Item(44, null), n4), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    n1.tell(new Message.PrintStats(), ActorRef.noSender());
+    n2.tell(new Message.PrintStats(), ActorRef.noSender());
+    n3.tell(new Message.PrintStats(), ActorRef.noSender());
+    n4.tell(new Message.PrintStats(), ActorRef.noSender());
+
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    system.terminate();
+
+    System.out.println("========================================\n\n");
+    System.out.println("========================================");
+    System.out.println("END EXECUTION 3");
+    System.out.println("========================================\n\n");
+  }
+
+  // Placement: every node has 8 virtual nodes and the keys are placed by their MurmurHash3 token.
+  // The client keeps a copy of the ring and sends its requests to a replica of the item; it reads and
+  // writes several items with a single request and reads ranges of keys with paged scans
+  private static void execution4(int n, int w, int r){
+    System.out.println("========================================");
+    System.out.println("START EXECUTION 4");
+    System.out.println("========================================\n\n");
+
+    ActorSystem system = ActorSystem.create("ds1-project-fourth-example");
+    int N = n; // degree of replication
+    int W = w; // write quorum
+    int R = r; // read quorum
+
+    // compilation time constants are not properly set
+    if(R + W <= N || W <= N/2){
+      System.out.println("Parameters N, W and R are set wrongly");
+      return;
+    }
+
+    NodeConfig config = new NodeConfig()
+      .virtualNodes(8)
+      .partitioner(Partitioner.MURMUR3);
+
+    System.out.println("========================================");
+    System.out.println("Create Nodes n1(key:10), n2(key:20), n3(key:30), n4(key:40) with 8 virtual nodes each and the MURMUR3 partitioner");
+    ActorRef n1 = system.actorOf(Node.props(N, R, W, T, config),"n1");
+    ActorRef n2 = system.actorOf(Node.props(N, R, W, T, config),"n2");
+    ActorRef n3 = system.actorOf(Node.props(N, R, W, T, config),"n3");
+    ActorRef n4 = system.actorOf(Node.props(N, R, W, T, config),"n4");
+
+    n1.tell(new Message.InitSystem(10), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+    n2.tell(new Message.JoinMsg(20, n1), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+    n3.tell(new Message.JoinMsg(30, n1), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+    n4.tell(new Message.JoinMsg(40, n1), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    System.out.println("========================================\n\n");
+
+    System.out.println("========================================");
+    System.out.println("Client c1 (routing, up to 4 operations in progress) writes the sequential keys 1..16 with a multi update: they are spread over all the nodes");
+    ActorRef c1 = system.actorOf(Client.props(N, config, 4),"c1");
+
+    List<Item> items = new ArrayList<>();
+    for(int k = 1; k <= 16; k++){
+      items.add(new Item(k, "VALUE" + k));
+    }
+    c1.tell(new ClientMessage.MultiUpdate(items, n1), ActorRef.noSender());
+
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    n1.tell(new Message.PrintItemList(), ActorRef.noSender());  // ask to print the current list of item
+    n2.tell(new Message.PrintItemList(), ActorRef.noSender());  // ask to print the current list of item
+    n3.tell(new Message.PrintItemList(), ActorRef.noSender());  // ask to print the current list of item
+    n4.tell(new Message.PrintItemList(), ActorRef.noSender());  // ask to print the current list of item
+
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    System.out.println("========================================\n\n");
+
+    System.out.println("========================================");
+    System.out.println("Client c1 reads keys 2, 7, 11 and the missing key 99 with a multi get, then the 5 smallest keys in 3..14 with a scan");
+
+    c1.tell(new ClientMessage.MultiGet(Arrays.asList(new Item(2, null), new Item(7, null), new Item(11, null), new Item(99, null)), n2), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    c1.tell(new ClientMessage.Scan(3, 14, 5, n3), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    System.out.println("========================================\n\n");
+
+    System.out.println("========================================");
+    System.out.println("Node n5(key:50) joins and n2 leaves: small slices of the ring move between many peers; then c1 scans all the keys");
+
+    ActorRef n5 = system.actorOf(Node.props(N, R, W, T, config),"n5");
+    n5.tell(new Message.JoinMsg(50, n1), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    n2.tell(new Message.LeaveMsg(), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    c1.tell(new ClientMessage.Scan(1, 16, 100, n5), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    n1.tell(new Message.PrintStats(), ActorRef.noSender());
+    n3.tell(new Message.PrintStats(), ActorRef.noSender());
+    n4.tell(new Message.PrintStats(), ActorRef.noSender());
+    n5.tell(new Message.PrintStats(), ActorRef.noSender());
+
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    system.terminate();
+
+    System.out.println("========================================\n\n");
+    System.out.println("========================================");
+    System.out.println("END EXECUTION 4");
+    System.out.println("========================================\n\n");
+  }
+
+  // Availability and convergence of the replicas: sloppy quorum with hinted handoff, hedged and digest
+  // reads, synchronous read repair and anti-entropy
+  private static void execution5(int n, int w, int r){
+    System.out.println("========================================");
+    System.out.println("START EXECUTION 5");
+    System.out.println("========================================\n\n");
+
+    ActorSystem system = ActorSystem.create("ds1-project-fifth-example");
+    int N = n; // degree of replication
+    int W = w; // write quorum
+    int R = r; // read quorum
+
+    // compilation time constants are not properly set
+    if(R + W <= N || W <= N/2){
+      System.out.println("Parameters N, W and R are set wrongly");
+      return;
+    }
+
+    NodeConfig config = new NodeConfig()
+      .sloppyQuorum(1000)
+      .hedgedReads(90, 50)
+      .digestReads(true)
+      .readRepair(ReadRepair.SYNC, 1000)
+      .antiEntropy(2 * T * 1000);
+
+    System.out.println("========================================");
+    System.out.println("Create Nodes n1(key:10), n2(key:20), n3(key:30), n4(key:40), n5(key:50)");
+    ActorRef n1 = system.actorOf(Node.props(N, R, W, T, config),"n1");
+    ActorRef n2 = system.actorOf(Node.props(N, R, W, T, config),"n2");
+    ActorRef n3 = system.actorOf(Node.props(N, R, W, T, config),"n3");
+    ActorRef n4 = system.actorOf(Node.props(N, R, W, T, config),"n4");
+    ActorRef n5 = system.actorOf(Node.props(N, R, W, T, config),"n5");
+
+    n1.tell(new Message.InitSystem(10), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+    n2.tell(new Message.JoinMsg(20, n1), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+    n3.tell(new Message.JoinMsg(30, n1), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+    n4.tell(new Message.JoinMsg(40, n1), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+    n5.tell(new Message.JoinMsg(50, n1), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    System.out.println("========================================\n\n");
+
+    System.out.println("========================================");
+    System.out.println("Client c1 writes items 15 and 25; then n3 and n4 crash");
+    ActorRef c1 = system.actorOf(Client.props(),"c1");
+
+    c1.tell(new ClientMessage.Update(new Item(15, "VALUE15"), n1), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+    c1.tell(new ClientMessage.Update(new Item(25, "VALUE25"), n1), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    n3.tell(new Message.CrashMsg(), ActorRef.noSender());
+    n4.tell(new Message.CrashMsg(), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    System.out.println("========================================\n\n");
+
+    System.out.println("========================================");
+    System.out.println("Client c1 updates item 25 (replicas n3, n4, n5): n1 and n2 stand in for the crashed replicas and keep the item as a hint");
+
+    c1.tell(new ClientMessage.Update(new Item(25, "VALUE25-NEW"), n5), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    System.out.println("========================================\n\n");
+
+    System.out.println("========================================");
+    System.out.println("Nodes n3 and n4 recover: the hints are handed over to them");
+
+    n3.tell(new Message.RecoveryMsg(n1), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+    n4.tell(new Message.RecoveryMsg(n1), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    n3.tell(new Message.PrintItemList(), ActorRef.noSender());  // ask to print the current list of item
+    n4.tell(new Message.PrintItemList(), ActorRef.noSender());  // ask to print the current list of item
+
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    System.out.println("========================================\n\n");
+
+    System.out.println("========================================");
+    System.out.println("Client c1 reads the items several times: hedged digest reads, the stale replicas are repaired before the reply");
+
+    for(int i = 0; i < 3; i++){
+      c1.tell(new ClientMessage.Get(new Item(15, null), n2), ActorRef.noSender());
+      try { Thread.sleep(SLEEPTIMESHORT); }
+      catch (InterruptedException e) { e.printStackTrace(); }
+      c1.tell(new ClientMessage.Get(new Item(25, null), n2), ActorRef.noSender());
+      try { Thread.sleep(SLEEPTIMESHORT); }
+      catch (InterruptedException e) { e.printStackTrace(); }
+    }
+
+    System.out.println("========================================\n\n");
+
+    System.out.println("========================================");
+    System.out.println("Wait for the anti-entropy rounds; finally each node prints its items and counters");
+
+    try { Thread.sleep(2 * SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    n1.tell(new Message.PrintItemList(), ActorRef.noSender());  // ask to print the current list of item
+    n2.tell(new Message.PrintItemList(), ActorRef.noSender());  // ask to print the current list of item
+    n3.tell(new Message.PrintItemList(), ActorRef.noSender());  // ask to print the current list of item
+    n4.tell(new Message.PrintItemList(), ActorRef.noSender());  // ask to print the current list of item
+    n5.tell(new Message.PrintItemList(), ActorRef.noSender());  // ask to print the current list of item
+
+    n1.tell(new Message.PrintStats(), ActorRef.noSender());
+    n2.tell(new Message.PrintStats(), ActorRef.noSender());
+    n3.tell(new Message.PrintStats(), ActorRef.noSender());
+    n4.tell(new Message.PrintStats(), ActorRef.noSender());
+    n5.tell(new Message.PrintStats(), ActorRef.noSender());
+
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    system.terminate();
+
+    System.out.println("========================================\n\n");
+    System.out.println("========================================");
+    System.out.println("END EXECUTION 5");
+    System.out.println("========================================\n\n");
+  }
+
+  // Write protocols without locks: two clients update the same item through different coordinators at
+  // the same time. With HLC_LWW the replicas keep the write with the highest timestamp; with VECTOR_CLOCK
+  // they keep both versions, the get returns them as siblings and the next update of c1 reconciles them
+  private static void execution6(int n, int w, int r, WriteProtocol protocol){
+    System.out.println("========================================");
+    System.out.println("START EXECUTION 6 (" + protocol + ")");
+    System.out.println("========================================\n\n");
+
+    ActorSystem system = ActorSystem.create("ds1-project-sixth-example");
+    int N = n; // degree of replication
+    int W = w; // write quorum
+    int R = r; // read quorum
+
+    // compilation time constants are not properly set
+    if(R + W <= N || W <= N/2){
+      System.out.println("Parameters N, W and R are set wrongly");
+      return;
+    }
+
+    NodeConfig config = new NodeConfig().writeProtocol(protocol);
+
+    System.out.println("========================================");
+    System.out.println("Create Nodes n1(key:10), n2(key:20), n3(key:30)");
+    ActorRef n1 = system.actorOf(Node.props(N, R, W, T, config),"n1");
+    ActorRef n2 = system.actorOf(Node.props(N, R, W, T, config),"n2");
+    ActorRef n3 = system.actorOf(Node.props(N, R, W, T, config),"n3");
+
+    n1.tell(new Message.InitSystem(10), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+    n2.tell(new Message.JoinMsg(20, n1), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+    n3.tell(new Message.JoinMsg(30, n1), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    System.out.println("========================================\n\n");
+
+    System.out.println("========================================");
+    System.out.println("Clients c1 and c2 update item 5 at the same time through n1 and n3");
+    ActorRef c1 = system.actorOf(Client.props(),"c1");
+    ActorRef c2 = system.actorOf(Client.props(),"c2");
+
+    c1.tell(new ClientMessage.Update(new Item(5, "VALUE5-C1"), n1), ActorRef.noSender());
+    c2.tell(new ClientMessage.Update(new Item(5, "VALUE5-C2"), n3), ActorRef.noSender());
+
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    n1.tell(new Message.PrintItemList(), ActorRef.noSender());  // ask to print the current list of item
+    n2.tell(new Message.PrintItemList(), ActorRef.noSender());  // ask to print the current list of item
+    n3.tell(new Message.PrintItemList(), ActorRef.noSender());  // ask to print the current list of item
+
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    System.out.println("========================================\n\n");
+
+    System.out.println("========================================");
+    System.out.println("Client c1 reads item 5 (with VECTOR_CLOCK it gets the siblings), writes it again and c2 reads it");
+
+    c1.tell(new ClientMessage.Get(new Item(5, null), n2), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    c1.tell(new ClientMessage.Update(new Item(5, "VALUE5-MERGED"), n2), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    c2.tell(new ClientMessage.Get(new Item(5, null), n1), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    n1.tell(new Message.PrintStats(), ActorRef.noSender());
+    n2.tell(new Message.PrintStats(), ActorRef.noSender());
+    n3.tell(new Message.PrintStats(), ActorRef.noSender());
+
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    system.terminate();
+
+    System.out.println("========================================\n\n");
+    System.out.println("========================================");
+    System.out.println("END EXECUTION 6 (" + protocol + ")");
+    System.out.println("========================================\n\n");
+  }
+
+  // Updates of the same item with the QUORUM_LOCK protocol: concurrent updates sent to the same coordinator
+  // wait in its write queue of the item instead of failing on the locks, and conditional updates (compare
+  // and set) succeed only if the item still has the expected version
+  private static void execution7(int n, int w, int r){
+    System.out.println("========================================");
+    System.out.println("START EXECUTION 7");
+    System.out.println("========================================\n\n");
+
+    ActorSystem system = ActorSystem.create("ds1-project-seventh-example");
+    int N = n; // degree of replication
+    int W = w; // write quorum
+    int R = r; // read quorum
+
+    // compilation time constants are not properly set
+    if(R + W <= N || W <= N/2){
+      System.out.println("Parameters N, W and R are set wrongly");
+      return;
+    }
+
+    System.out.println("========================================");
+    System.out.println("Create Nodes n1(key:10), n2(key:20), n3(key:30)");
+    ActorRef n1 = system.actorOf(Node.props(N, R, W, T),"n1");
+    ActorRef n2 = system.actorOf(Node.props(N, R, W, T),"n2");
+    ActorRef n3 = system.actorOf(Node.props(N, R, W, T),"n3");
+
+    n1.tell(new Message.InitSystem(10), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+    n2.tell(new Message.JoinMsg(20, n1), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+    n3.tell(new Message.JoinMsg(30, n1), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    System.out.println("========================================\n\n");
+
+    System.out.println("========================================");
+    System.out.println("Clients c1, c2 and c3 update item 15 through n1 at the same time: the updates are queued and run one at a time");
+    ActorRef c1 = system.actorOf(Client.props(),"c1");
+    ActorRef c2 = system.actorOf(Client.props(),"c2");
+    ActorRef c3 = system.actorOf(Client.props(),"c3");
+
+    c1.tell(new ClientMessage.Update(new Item(15, "VALUE15-C1"), n1), ActorRef.noSender());
+    c2.tell(new ClientMessage.Update(new Item(15, "VALUE15-C2"), n1), ActorRef.noSender());
+    c3.tell(new ClientMessage.Update(new Item(15, "VALUE15-C3"), n1), ActorRef.noSender());
+
+    try { Thread.sleep(SLEEPTIMEFULL); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    n1.tell(new Message.PrintItemList(), ActorRef.noSender());  // ask to print the current list of item
+    n1.tell(new Message.PrintStats(), ActorRef.noSender());     // the coalesced writes
+
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    System.out.println("========================================\n\n");
+
+    System.out.println("========================================");
+    System.out.println("Conditional updates: c1 creates item 25 (expected version 0), updates it with the right version, then c2 updates it with the old version and gets a CONFLICT");
+
+    c1.tell(new ClientMessage.Update(new Item(25, "VALUE25"), n2, 0L), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    c1.tell(new ClientMessage.Update(new Item(25, "VALUE25-V2"), n2, 1L), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    c2.tell(new ClientMessage.Update(new Item(25, "VALUE25-STALE"), n3, 1L), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    c3.tell(new ClientMessage.Get(new Item(25, null), n3), ActorRef.noSender());
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    n1.tell(new Message.PrintStats(), ActorRef.noSender());
+    n2.tell(new Message.PrintStats(), ActorRef.noSender());
+    n3.tell(new Message.PrintStats(), ActorRef.noSender());
+
+    try { Thread.sleep(SLEEPTIMESHORT); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    system.terminate();
+
+    System.out.println("========================================\n\n");
+    System.out.println("========================================");
+    System.out.println("END EXECUTION 7");
+    System.out.println("========================================\n\n");
+  }
 }
@@ -0,0 +1,84 @@
+package it.unitn.ds1;
+
+import java.util.Arrays;
+
+// Hash tree of the items of a node, used by the anti-entropy process to find the items on which two
+// replicas differ without sending the items.
+// The token space of the partitioner is split in LEAVES buckets of the same width. The hash of a bucket
+// is the XOR of the hashes of the (key, version) pairs of its items, so a write updates it in constant
+// time without reading the other items. The inner nodes (heap layout: the children of node i are 2i and
+// 2i + 1, the root is node 1) hold the XOR of their subtree, so the hash of any range of buckets is
+// computed from O(DEPTH) nodes and a write updates DEPTH + 1 nodes.
+public class MerkleTree {
+    public static final int DEPTH = 10;
+    public static final int LEAVES = 1 << DEPTH;
+
+    private final long minToken;
+    private final int shift;        // the bucket of a token is (token - minToken) >>> shift
+    private final long[] nodes;
+
+    public MerkleTree(Partitioner partitioner){
+        this.minToken = partitioner.minToken();
+        this.shift = partitioner.tokenBits() - DEPTH;
+        this.nodes = new long[2 * LEAVES];
+    }
+
+    // the version of an item has changed: oldVersion is -1 if the item has been added, newVersion is -1
+    // if it has been removed
+    public void update(long token, int key, long oldVersion, long newVersion){
+        long delta = 0;
+        if(oldVersion >= 0){
+            delta ^= itemHash(key, oldVersion);
+        }
+        if(newVersion >= 0){
+            delta ^= itemHash(key, newVersion);
+        }
+        for(int i = LEAVES + leafOf(token); i > 0; i >>= 1){
+            nodes[i] ^= delta;
+        }
+    }
+
+    public int leafOf(long token){
+        return (int) ((token - minToken) >>> shift);
+    }
+
+    // first token of the leaf
+    public long leafLow(int leaf){
+        return minToken + ((long) leaf << shift);
+    }
+
+    // last token of the leaf
+    public long leafHigh(int leaf){
+        return leafLow(leaf) + ((1L << shift) - 1);
+    }
+
+    public long leaf(int leaf){
+        return nodes[LEAVES + leaf];
+    }
+
+    // hash of the leaves first..last (included)
+    public long range(int first, int last){
+        long hash = 0;
+        for(int lo = first + LEAVES, hi = last + LEAVES + 1; lo < hi; lo >>= 1, hi >>= 1){
+            if((lo & 1) == 1){
+                hash ^= nodes[lo++];
+            }
+            if((hi & 1) == 1){
+                hash ^= nodes[--hi];
+            }
+        }
+        return hash;
+    }
+
+    public long root(){
+        return nodes[1];
+    }
+
+    public void clear(){
+        Arrays.fill(nodes, 0);
+    }
+
+    public static long itemHash(int key, long version){
+        return Partitioner.murmur3(key & 0xFFFFFFFFL, Integer.BYTES) * 31 + Partitioner.murmur3(version, Long.BYTES);
+    }
+}
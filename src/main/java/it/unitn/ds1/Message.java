@@ -2,8 +2,10 @@ package it.unitn.ds1;
 import akka.actor.ActorRef;
 import java.io.Serializable;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.HashSet;
+import java.util.List;
 import java.util.TreeMap;
 import java.util.Set;
 
@@ -43,15 +45,18 @@ public class Message{
         }
     }
 
-    // The joining node with key=_key should request data items it is responsible for
+    // The joining node with key=_key should request data items it is responsible for.
+    // The peer sends the items in the arcs of the ring {from0, to0, from1, to1, ...} (see RoutingTable.getArcs)
     public static class ReqDataItemsResponsibleFor implements Serializable{
         public final int key;
-        public ReqDataItemsResponsibleFor(int _key){
+        public final long[] arcs;
+        public ReqDataItemsResponsibleFor(int _key, long[] _arcs){
             this.key = _key;
+            this.arcs = _arcs.clone();
         }
     }
 
-    // The successor of the joining node sends the data items the new node is responsible for
+    // A peer of the joining node sends the data items the new node is responsible for
     public static class ResDataItemsResponsibleFor implements Serializable{
         public final Set<Item> resSet;
         public ResDataItemsResponsibleFor(Set<Item> _resSet){
@@ -120,16 +125,20 @@ public class Message{
         }
     }
 
-    // the node which is recovering requests the items that are now under its responsability from the clockwise neighbor.
-    // In the message we include keyItemSet which is the set of items that are already in the this.items data structure
-    // of the node which is recovering. In this way we avoid to send this items again from the clockwise neighbor.
+    // the node which is recovering requests the items that are now under its responsability from the peers which hold
+    // its arcs of the ring (one request per peer, with the arcs it holds).
+    // In the message we include keyVersionMap which maps the key of each item that is already in the this.items data
+    // structure of the node which is recovering to its version. In this way the peer sends only the items
+    // that the recovering node does not have or that have been updated while it was crashed.
     public static class ReqDataItemsResponsibleFor_recovery implements Serializable{
         public final int key;
-        public final Set<Integer> keyItemSet;
+        public final Map<Integer, Long> keyVersionMap;
+        public final long[] arcs;   // arcs of the ring requested to the peer, {from0, to0, from1, to1, ...} (see RoutingTable.getArcs)
 
-        public ReqDataItemsResponsibleFor_recovery(int _key, Set<Integer> _keyItemSet){
+        public ReqDataItemsResponsibleFor_recovery(int _key, Map<Integer, Long> _keyVersionMap, long[] _arcs){
             this.key = _key;
-            this.keyItemSet = Collections.unmodifiableSet(new HashSet<>(_keyItemSet));
+            this.keyVersionMap = Collections.unmodifiableMap(new HashMap<>(_keyVersionMap));
+            this.arcs = _arcs;
         }
     }
 
@@ -142,26 +151,191 @@ public class Message{
     // Message to trigger the print of the list of items
     public static class PrintItemList implements Serializable {}
 
+    // Message to trigger the print of the counters of the node
+    public static class PrintStats implements Serializable {}
+
+    // The coordinator of a get sends the newest version of the item to a replica which has an older one.
+    // With ack the replica answers with ReadRepairAck (ReadRepair.SYNC)
+    public static class ReadRepairWrite implements Serializable {
+        public final long requestId;
+        public final Item item;
+        public final boolean ack;
+        public ReadRepairWrite(long requestId, Item item, boolean ack) {
+            this.requestId = requestId;
+            this.item = item;
+            this.ack = ack;
+        }
+    }
+
+    // The replica has handled the ReadRepairWrite of a get
+    public static class ReadRepairAck implements Serializable {
+        public final long requestId;
+        public final int itemId;
+        public ReadRepairAck(long requestId, int itemId) {
+            this.requestId = requestId;
+            this.itemId = itemId;
+        }
+    }
+
+    // The coordinator of a get has not received all the ReadRepairAck in time: the client is answered anyway
+    public static class ReadRepairTimeout implements Serializable {
+        public final long requestId;
+        public final int itemId;
+        public ReadRepairTimeout(long requestId, int itemId) {
+            this.requestId = requestId;
+            this.itemId = itemId;
+        }
+    }
+
+    // The replicas contacted first by a hedged get have not reached the quorum R in time: contact the others
+    public static class HedgeTimeout implements Serializable {
+        public final long requestId;
+        public final int itemId;
+        public HedgeTimeout(long requestId, int itemId) {
+            this.requestId = requestId;
+            this.itemId = itemId;
+        }
+    }
+
+    // The window in which the coordinator of a get collects the late answers for the read repair is over
+    public static class ReadRepairWindow implements Serializable {
+        public final long requestId;
+        public final int itemId;
+        public ReadRepairWindow(long requestId, int itemId) {
+            this.requestId = requestId;
+            this.itemId = itemId;
+        }
+    }
+
     // This class represents a timeoutExpiration for get or update operation
     public static class Timeout implements Serializable {
-        public final String clientName;
+        public final long requestId;
         public final int itemId;
-        public Timeout(String clientName, int itemId) {
-            this.clientName = clientName;
+        public Timeout(long requestId, int itemId) {
+            this.requestId = requestId;
             this.itemId = itemId;
         }
     }
 
+    // Sloppy quorum: the replicas of an update have not answered in time, ask the next nodes of the ring
+    public static class HintTimeout implements Serializable {
+        public final long requestId;
+        public final int itemId;
+        public HintTimeout(long requestId, int itemId) {
+            this.requestId = requestId;
+            this.itemId = itemId;
+        }
+    }
+
+    // A node which has recovered from a crash asks its peers for the items they have kept on its behalf
+    public static class HintReplayRequest implements Serializable {
+        public final int key;
+        public HintReplayRequest(int _key) {
+            this.key = _key;
+        }
+    }
+
+    // The items written on a node in place of another one (hinted handoff): sent when the hint is written,
+    // in case the replica was only slow, and when the replica recovers
+    public static class HintReplay implements Serializable {
+        public final Set<Item> itemSet;
+        public HintReplay(Set<Item> _itemSet) {
+            this.itemSet = _itemSet;
+        }
+    }
+
+    // The replica has received the hints: versions[k] :: version of the hint of item k, which can be dropped
+    public static class HintReplayAck implements Serializable {
+        public final int key;
+        public final Map<Integer, Long> versions;
+        public HintReplayAck(int _key, Map<Integer, Long> _versions) {
+            this.key = _key;
+            this.versions = _versions;
+        }
+    }
+
     // This class represents a message to release locks of an item
     public static class ReleaseLock implements Serializable {
-        public final String clientName;
+        public final long requestId;
         public final int itemId;
-        public ReleaseLock(String clientName, int itemId) {
-            this.clientName = clientName;
+        public ReleaseLock(long requestId, int itemId) {
+            this.requestId = requestId;
             this.itemId = itemId;
         }
     }
 
+    // Periodic message which asks the node to commit the pending records of its write-ahead log
+    public static class CommitWriteAheadLog implements Serializable {}
+
+    // Periodic message which asks the node to checkpoint its items in the snapshot file
+    public static class Checkpoint implements Serializable {}
+
+    // Periodic message which starts a round of anti-entropy with a replica peer
+    public static class AntiEntropy implements Serializable {}
+
+    // Anti-entropy, first step: the hashes of the items of a node in the token intervals it shares with the peer.
+    // intervals: {low0, high0, low1, high1, ...} (bounds included); hashes[i] :: hash of the interval i
+    public static class MerkleSummary implements Serializable {
+        public final int key;
+        public final long[] intervals;
+        public final long[] hashes;
+        public MerkleSummary(int _key, long[] _intervals, long[] _hashes){
+            this.key = _key;
+            this.intervals = _intervals;
+            this.hashes = _hashes;
+        }
+    }
+
+    // Anti-entropy, second step: the peer returns the hashes of the buckets (MerkleTree leaves) of the intervals
+    // whose hash differs from its own one. leafHashes[i][j] :: hash of the j-th bucket of the interval i
+    public static class MerkleLeaves implements Serializable {
+        public final int key;
+        public final long[] intervals;
+        public final long[][] leafHashes;
+        public MerkleLeaves(int _key, long[] _intervals, long[][] _leafHashes){
+            this.key = _key;
+            this.intervals = _intervals;
+            this.leafHashes = _leafHashes;
+        }
+    }
+
+    // Anti-entropy, last step: the items of a node in the token ranges whose buckets differ. The receiver keeps
+    // the newer ones and, if reply is true, sends back its items which are newer or missing in itemSet
+    public static class AntiEntropyPush implements Serializable {
+        public final long[] ranges;
+        public final Set<Item> itemSet;
+        public final boolean reply;
+        public AntiEntropyPush(long[] _ranges, Set<Item> _itemSet, boolean _reply){
+            this.ranges = _ranges;
+            this.itemSet = _itemSet;
+            this.reply = _reply;
+        }
+    }
+
+    // Periodic message which asks the node to report its load to its peers and to check if the ring is unbalanced
+    public static class Rebalance implements Serializable {}
+
+    // A node informs its peers about the rate of the requests it has served in the last window
+    public static class LoadReport implements Serializable {
+        public final int key;
+        public final double requestRate;    // requests per second
+
+        public LoadReport(int _key, double _requestRate){
+            this.key = _key;
+            this.requestRate = _requestRate;
+        }
+    }
+
+    // An overloaded node asks a lightly loaded peer to move on the ring: the peer leaves and joins again
+    // with key=_key, taking over part of the arcs of the overloaded node (which acts as bootstrapping peer)
+    public static class RebalanceMove implements Serializable {
+        public final int key;
+
+        public RebalanceMove(int _key){
+            this.key = _key;
+        }
+    }
+
     // this timeout message is sent when there is no response for ReqActiveNodeList message request
     public static class Timeout_ReqActiveNodeList implements Serializable{}
 
@@ -188,75 +362,280 @@ public class Message{
     // of the nodes that should become responsible of its data items after the departure
     public static class Timeout_AnnounceDeparture implements Serializable{}
 
-    // This class represents the request message to get the updated version of an item
+    // This class represents the request message to get the updated version of an item.
+    // The coordinator gives every request of a client a new id, unique in the ring (see Node.nextRequestId):
+    // it is the requestId of the messages exchanged with the replicas and of the locks of the update
     public static class GetRequest implements Serializable {
         public final String clientName;
+        public final long requestId;    // chosen by the client, returned in the result
         public final Item item;
-        public GetRequest(String clientName, Item item) {
+        public GetRequest(String clientName, long requestId, Item item) {
             this.clientName = clientName;
+            this.requestId = requestId;
             this.item = item;
         }
     }
 
+    // This class represents the request message to get several items (ClientMessage.MultiGet)
+    public static class MultiGetRequest implements Serializable {
+        public final String clientName;
+        public final long requestId;    // chosen by the client, returned in the result
+        public final List<Item> items;
+        public MultiGetRequest(String clientName, long requestId, List<Item> items) {
+            this.clientName = clientName;
+            this.requestId = requestId;
+            this.items = items;
+        }
+    }
+
+    // This class represents the request message to update several items (ClientMessage.MultiUpdate)
+    public static class MultiUpdateRequest implements Serializable {
+        public final String clientName;
+        public final long requestId;    // chosen by the client, returned in the result
+        public final List<Item> items;
+        public MultiUpdateRequest(String clientName, long requestId, List<Item> items) {
+            this.clientName = clientName;
+            this.requestId = requestId;
+            this.items = items;
+        }
+    }
+
+    // This class represents the request message of a scan (ClientMessage.Scan); credits is the number of pages
+    // the client is ready to receive
+    public static class ScanRequest implements Serializable {
+        public final String clientName;
+        public final long requestId;    // chosen by the client, returned in the pages
+        public final int fromKey;
+        public final int toKey;
+        public final int limit;
+        public final int credits;
+        public ScanRequest(String clientName, long requestId, int fromKey, int toKey, int limit, int credits) {
+            this.clientName = clientName;
+            this.requestId = requestId;
+            this.fromKey = fromKey;
+            this.toKey = toKey;
+            this.limit = limit;
+            this.credits = credits;
+        }
+    }
+
+    // The client has processed a page of a scan and it is ready to receive another one
+    public static class ScanCredit implements Serializable {
+        public final long scanId;
+        public ScanCredit(long scanId) {
+            this.scanId = scanId;
+        }
+    }
+
+    // The coordinator of a scan asks a replica for its items of a part of the scan: the items whose token is in
+    // [lowToken, highToken] and whose key is in [fromKey, toKey], at most max items in key order
+    public static class ScanRead implements Serializable {
+        public final long scanId;
+        public final int part;
+        public final long lowToken;
+        public final long highToken;
+        public final int fromKey;
+        public final int toKey;
+        public final int max;
+        public ScanRead(long scanId, int part, long lowToken, long highToken, int fromKey, int toKey, int max) {
+            this.scanId = scanId;
+            this.part = part;
+            this.lowToken = lowToken;
+            this.highToken = highToken;
+            this.fromKey = fromKey;
+            this.toKey = toKey;
+            this.max = max;
+        }
+    }
+
+    // The items of a replica for a part of a scan
+    public static class ScanItems implements Serializable {
+        public final long scanId;
+        public final int part;
+        public final List<Item> items;
+        public ScanItems(long scanId, int part, List<Item> items) {
+            this.scanId = scanId;
+            this.part = part;
+            this.items = items;
+        }
+    }
+
+    // The current step of a scan (reading a part, or waiting for a credit of the client) has not completed in time
+    public static class ScanTimeout implements Serializable {
+        public final long scanId;
+        public final int step;
+        public ScanTimeout(long scanId, int step) {
+            this.scanId = scanId;
+            this.step = step;
+        }
+    }
+
+    // Messages of several requests for the same node, sent together (multi get and multi update): the
+    // node handles them in order and sends its answers for the same node together too
+    public static class Batch implements Serializable {
+        public final List<Serializable> messages;
+        public Batch(List<Serializable> messages) {
+            this.messages = messages;
+        }
+    }
+
     // This class represents a message to request the owner of an item to return the version it owns
+    // digest == true: the owner returns only the version of the item (ReadDigest)
     public static class Read implements Serializable {
-        public final String clientName;
+        public final long requestId;
         public final Item item;
-        public Read(String clientName, Item item) {
-            this.clientName = clientName;
+        public final boolean digest;
+        public Read(long requestId, Item item) {
+            this(requestId, item, false);
+        }
+        public Read(long requestId, Item item, boolean digest) {
+            this.requestId = requestId;
             this.item = item;
+            this.digest = digest;
+        }
+    }
+
+    //This class represents the version of an item that the node owns, without its value (digest read)
+    public static class ReadDigest implements Serializable {
+        public final long requestId;
+        public final int itemId;
+        public final long version;
+        public ReadDigest(long requestId, int itemId, long version) {
+            this.requestId = requestId;
+            this.itemId = itemId;
+            this.version = version;
+        }
+    }
+
+    //The owner cannot serve a read because the item is locked by an update in progress
+    public static class Busy implements Serializable {
+        public final long requestId;
+        public final int itemId;
+        public Busy(long requestId, int itemId) {
+            this.requestId = requestId;
+            this.itemId = itemId;
         }
     }
 
     //This class represents a message with all the information of an item that the node owns
     public static class ReadItemInformation implements Serializable {
-        public final String clientName;
+        public final long requestId;
         public final Item item;
-        public ReadItemInformation(String clientName, Item item) {
-            this.clientName = clientName;
+        public final List<Item> siblings;   // concurrent versions of the item (VECTOR_CLOCK write protocol), empty otherwise
+        public ReadItemInformation(long requestId, Item item) {
+            this(requestId, item, Collections.emptyList());
+        }
+        public ReadItemInformation(long requestId, Item item, List<Item> siblings) {
+            this.requestId = requestId;
             this.item = item;
+            this.siblings = siblings;
         }
     }
 
 
 
     // This class represents a request message to update the item with the new value and version
+    // expectedVersion: see ClientMessage.Update
     public static class UpdateRequest implements Serializable {
         public final String clientName;
+        public final long requestId;    // chosen by the client, returned in the result
         public final Item item;
-        public UpdateRequest(String clientName, Item item) {
+        public final Long expectedVersion;
+        public UpdateRequest(String clientName, long requestId, Item item) {
+            this(clientName, requestId, item, null);
+        }
+        public UpdateRequest(String clientName, long requestId, Item item, Long expectedVersion) {
             this.clientName = clientName;
+            this.requestId = requestId;
             this.item = item;
+            this.expectedVersion = expectedVersion;
         }
     }
 
     // This class represents a message to request the version of the item that has to be updated
+    // hintFor is the key of the replica for which the node stands in (sloppy quorum), null if the node is a replica
     public static class Version implements Serializable {
-        public final String clientName;
+        public final long requestId;
         public final Item item;
-        public Version(String clientName, Item item) {
-            this.clientName = clientName;
+        public final Integer hintFor;
+        public Version(long requestId, Item item) {
+            this(requestId, item, null);
+        }
+        public Version(long requestId, Item item, Integer hintFor) {
+            this.requestId = requestId;
             this.item = item;
+            this.hintFor = hintFor;
+        }
+    }
+
+    // The owner cannot grant the lock of an item to an update because another update holds it
+    public static class Locked implements Serializable {
+        public final long requestId;
+        public final int itemId;
+        public Locked(long requestId, int itemId) {
+            this.requestId = requestId;
+            this.itemId = itemId;
+        }
+    }
+
+    // The update of an item coordinated by the node has completed: start the next queued update of the item.
+    // It is a message to the node itself so that the Write and ReleaseLock messages of the completed update
+    // reach the replicas before the Version messages of the next one
+    public static class NextWrite implements Serializable {
+        public final int itemId;
+        public NextWrite(int itemId) {
+            this.itemId = itemId;
         }
     }
 
     // This class represents a message that returns the version of the item
     public static class UpdateVersion implements Serializable {
-        public final String clientName;
+        public final long requestId;
         public final Item item;
-        public UpdateVersion(String clientName, Item item) {
-            this.clientName = clientName;
+        public UpdateVersion(long requestId, Item item) {
+            this.requestId = requestId;
             this.item = item;
         }
     }
 
+    // HLC_LWW and VECTOR_CLOCK update: the coordinator sends the stamped item to a replica, without locks
+    public static class DirectWrite implements Serializable {
+        public final long requestId;
+        public final Item item;
+        public DirectWrite(long requestId, Item item) {
+            this.requestId = requestId;
+            this.item = item;
+        }
+    }
+
+    // HLC_LWW update: the replica has handled the write; storedVersion is the version it keeps now, which
+    // is greater than the version of the write if a later write has won
+    public static class WriteAck implements Serializable {
+        public final long requestId;
+        public final int itemId;
+        public final long version;
+        public final long storedVersion;
+        public WriteAck(long requestId, int itemId, long version, long storedVersion) {
+            this.requestId = requestId;
+            this.itemId = itemId;
+            this.version = version;
+            this.storedVersion = storedVersion;
+        }
+    }
+
     // This class represents a message to write the new item, with the updated version
+    // hintFor is the key of the replica for which the node keeps the item (sloppy quorum), null if the node is a replica
     public static class Write implements Serializable {
-        public final String clientName;
+        public final long requestId;
         public final Item item;
-        public Write(String clientName, Item item) {
-            this.clientName = clientName;
+        public final Integer hintFor;
+        public Write(long requestId, Item item) {
+            this(requestId, item, null);
+        }
+        public Write(long requestId, Item item, Integer hintFor) {
+            this.requestId = requestId;
             this.item = item;
+            this.hintFor = hintFor;
         }
     }
 }
\ No newline at end of file
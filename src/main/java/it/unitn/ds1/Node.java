@@ -4,8 +4,12 @@ import java.util.*;
 
 import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
+import akka.actor.Cancellable;
 import akka.actor.Props;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
 import java.util.concurrent.TimeUnit;
 import scala.concurrent.duration.Duration;
 
@@ -15,11 +19,48 @@ public class Node extends AbstractActor {
   private final int W;
   private final int T;
   private final int MAXRANDOMDELAYTIME = 1;       //Maximum delay time in seconds
+  private static final int SAMPLED_KEYS = 64;     // hot keys tracked by the sampler
+  private static final int REBALANCE_RANDOM_CANDIDATES = 64;  // random keys evaluated by the rebalancer
+  private static final int SCAN_PAGE_SIZE = 100;  // items of a page of a scan
   private final Random rnd;
   private final Map<Integer, ActorRef> peers;     // peers[K] points to the node in the group with key K
-  private final Map<Integer, Item> items;         // the set of data items the node is currently responsible for
-  private final Map<String, Request> requests;    // lists of the requests
-  private final Map<Integer, String> locks;       // lock mapping used to manage concurrent writes
+  private RoutingTable routingTable;              // preference lists of the current ring, rebuilt when peers changes
+  private final ItemStore items;                  // the set of data items the node is currently responsible for
+  private final Map<Long, Request> requests;      // requests in progress, by request id
+  private final Map<Integer, Long> locks;         // lock mapping used to manage concurrent writes: locks[k] :: id of the update which holds the lock of item k
+  private final NodeConfig config;                // node settings (storage, ...)
+  private WriteAheadLog wal;                      // write-ahead log of the items, null if it is disabled
+  private Cancellable walCommitTimer;             // periodic CommitWriteAheadLog message
+  private SnapshotFile snapshot;                  // last checkpoint of the items, null if the write-ahead log is disabled
+  private Cancellable checkpointTimer;            // periodic Checkpoint message
+  private final AccessSampler sampler;            // accesses of the node to its items, used by the rebalancer
+  private final Map<Integer, Double> peerLoad;    // peerLoad[K] :: last request rate reported by the node with key K
+  private Cancellable rebalanceTimer;             // periodic Rebalance message
+  private int overloadedWindows;                  // consecutive windows in which the node has been overloaded
+  private Integer rebalanceRejoinKey;             // key of the join which follows a leave requested by RebalanceMove, null if none
+  private ActorRef rebalanceBootstrappingPeer;    // bootstrapping peer of that join
+  private final Map<Long, Request> readRepairs;    // gets already answered whose late replies are still collected for the read repair, by request id
+  private final Map<Long, Request> syncRepairs;    // gets waiting for the acks of their read repair before the reply (ReadRepair.SYNC), by request id
+  private long readRepairsIssued;                 // repairs sent by the node as coordinator of a get
+  private long readRepairsApplied;                // repairs which have updated an item of the node
+  private final Map<Integer, List<Item>> siblings;  // siblings[k] :: versions of item k with their vector clocks, concurrent with each other (VECTOR_CLOCK)
+  private final HybridLogicalClock clock;         // timestamps of the updates of the HLC_LWW protocol
+  private final LatencyTracker latencies;         // latency of the replies of the replicas to the gets, used by the hedged reads
+  private long hedgedReads;                       // Read messages sent after the hedge delay
+  private long refusalsReceived;                  // Busy and Locked answers received as coordinator
+  private long refusalAborts;                     // requests aborted before the timeout because the quorum could no more be reached
+  private final Map<Integer, Deque<Request>> writeQueues;  // writeQueues[k] :: updates of item k coordinated by the node in arrival order, the first one is running (QUORUM_LOCK)
+  private long coalescedWrites;                   // updates whose value has been written by a later queued update of the same item
+  private final Map<Long, ScanCursor> scans;      // scans coordinated by the node, by scan id
+  private Map<ActorRef, List<Serializable>> outbox;  // messages of a batch waiting to be sent, by destination; null if the node is not batching
+  private int requestCounter;                     // requests coordinated by the node (see nextRequestId)
+  private long requestTimersScheduled;            // timeout, hedge and hint messages scheduled for the requests
+  private long requestTimersCancelled;            // the ones cancelled because the request completed before
+  private final MerkleTree merkleTree;            // hash tree of the items, null if anti-entropy is disabled
+  private Cancellable antiEntropyTimer;           // periodic AntiEntropy message
+  private long antiEntropyItemsSent;              // items sent because a peer had an older version or did not have them
+  private long antiEntropyItemsApplied;           // items updated by anti-entropy
+  private final Map<Integer, Map<Integer, Item>> hints; // hints[K][k] :: item k written on this node in place of the crashed replica K (sloppy quorum)
 
   private int key;  // node key
 
@@ -37,6 +78,8 @@ public class Node extends AbstractActor {
   private boolean timeout_AnnounceDeparture_expired;
 
   private HashMap<Integer, HashSet<Integer>> nodeKeyToResponsibleItem; // data structure used in the context of the leave opreation
+  private int join_pending_sources;                       // the joining node is waiting the data items from this number of peers
+  private final Map<Integer, ActorRef> join_item_source;  // join_item_source[item_key] :: the peer which has sent the item to the joining node
   private boolean flag_reqActiveNodeList;
   private boolean timeout_ReqActiveNodeList_expired;
   private boolean flag_reqActiveNodeList_recovery;
@@ -44,21 +87,40 @@ public class Node extends AbstractActor {
   private boolean flag_reqDataItemsResponsibleFor;
   private boolean timeout_ReqDataItemsResponsibleFor_expired;
   private boolean flag_reqDataItemsResponsibleFor_recovery;
+  private int recovery_pending_sources;                   // the recovering node is waiting the data items from this number of peers
   private boolean timeout_ReqDataItemsResponsibleFor_recovery_expired;
   //-------------
 
   public Node(int n, int r, int w, int t){
+    this(n, r, w, t, new NodeConfig());
+  }
+
+  public Node(int n, int r, int w, int t, NodeConfig config){
     this.N = n;
     this.R = r;
     this.W = w;
     this.T = t;
     this.rnd = new Random();
     this.peers = new TreeMap<>();
-    this.items = new HashMap<>();
+    this.config = config;
+    this.routingTable = new RoutingTable(this.peers.keySet(), this.N, config.tokensPerNode, config.partitioner);
+    this.items = config.createItemStore(this.getSelf().path().name());
     this.requests = new HashMap<>();
     this.locks = new HashMap<>();
+    this.sampler = new AccessSampler(SAMPLED_KEYS);
+    this.peerLoad = new HashMap<>();
+    this.hints = new HashMap<>();
+    this.readRepairs = new HashMap<>();
+    this.syncRepairs = new HashMap<>();
+    this.latencies = new LatencyTracker();
+    this.clock = new HybridLogicalClock();
+    this.siblings = new HashMap<>();
+    this.scans = new HashMap<>();
+    this.writeQueues = new HashMap<>();
+    this.merkleTree = config.antiEntropyIntervalMs > 0 ? new MerkleTree(config.partitioner) : null;
 
     this.join_update_item_response_counter = new HashMap<>();
+    this.join_item_source = new HashMap<>();
     this.flag_ignore_further_read_update = false;
     this.leave_response_counter = 0;
     this.timeout_AnnounceDeparture_expired = false;
@@ -75,12 +137,90 @@ public class Node extends AbstractActor {
   @Override
   public void preStart() {
     System.out.println("["+this.getSelf().path().name()+"] [preStart]");
+
+    if(this.config.walDirectory != null){
+      try {
+        this.wal = new WriteAheadLog(new File(this.config.walDirectory, this.getSelf().path().name() + ".wal"), this.config.groupCommitSize);
+      } catch (IOException e) {
+        e.printStackTrace();
+        return;
+      }
+
+      // commit the log periodically, so that a record does not wait for groupCommitSize writes to be durable
+      this.walCommitTimer = getContext().system().scheduler().scheduleWithFixedDelay(
+        Duration.create(this.config.groupCommitIntervalMs, TimeUnit.MILLISECONDS),  // initial delay
+        Duration.create(this.config.groupCommitIntervalMs, TimeUnit.MILLISECONDS),  // interval
+        this.getSelf(),                             // destination actor reference
+        new Message.CommitWriteAheadLog(),          // the message to send
+        getContext().system().dispatcher(),         // system dispatcher
+        this.getSelf()                              // source of the message (myself)
+      );
+
+      this.snapshot = new SnapshotFile(new File(this.config.walDirectory, this.getSelf().path().name() + ".snapshot"));
+      if(this.config.checkpointIntervalMs > 0){
+        this.checkpointTimer = getContext().system().scheduler().scheduleWithFixedDelay(
+          Duration.create(this.config.checkpointIntervalMs, TimeUnit.MILLISECONDS),  // initial delay
+          Duration.create(this.config.checkpointIntervalMs, TimeUnit.MILLISECONDS),  // interval
+          this.getSelf(),                             // destination actor reference
+          new Message.Checkpoint(),                   // the message to send
+          getContext().system().dispatcher(),         // system dispatcher
+          this.getSelf()                              // source of the message (myself)
+        );
+      }
+    }
+
+    if(this.config.rebalanceIntervalMs > 0){
+      this.rebalanceTimer = getContext().system().scheduler().scheduleWithFixedDelay(
+        Duration.create(this.config.rebalanceIntervalMs, TimeUnit.MILLISECONDS),  // initial delay
+        Duration.create(this.config.rebalanceIntervalMs, TimeUnit.MILLISECONDS),  // interval
+        this.getSelf(),                             // destination actor reference
+        new Message.Rebalance(),                    // the message to send
+        getContext().system().dispatcher(),         // system dispatcher
+        this.getSelf()                              // source of the message (myself)
+      );
+    }
+
+    if(this.config.antiEntropyIntervalMs > 0){
+      this.antiEntropyTimer = getContext().system().scheduler().scheduleWithFixedDelay(
+        Duration.create(this.config.antiEntropyIntervalMs, TimeUnit.MILLISECONDS),  // initial delay
+        Duration.create(this.config.antiEntropyIntervalMs, TimeUnit.MILLISECONDS),  // interval
+        this.getSelf(),                             // destination actor reference
+        new Message.AntiEntropy(),                  // the message to send
+        getContext().system().dispatcher(),         // system dispatcher
+        this.getSelf()                              // source of the message (myself)
+      );
+    }
+  }
+
+  @Override
+  public void postStop() {
+    this.items.close();
+    if(this.walCommitTimer != null){
+      this.walCommitTimer.cancel();
+    }
+    if(this.checkpointTimer != null){
+      this.checkpointTimer.cancel();
+    }
+    if(this.rebalanceTimer != null){
+      this.rebalanceTimer.cancel();
+    }
+    if(this.antiEntropyTimer != null){
+      this.antiEntropyTimer.cancel();
+    }
+    if(this.wal != null){
+      try { this.wal.close(); }
+      catch (IOException e) { e.printStackTrace(); }
+    }
   }
 
   static public Props props(int n, int r, int w, int t) {
     return Props.create(Node.class, () -> new Node(n, r, w, t));
   }
 
+  static public Props props(int n, int r, int w, int t, NodeConfig config) {
+    return Props.create(Node.class, () -> new Node(n, r, w, t, config));
+  }
+
   // Mapping between the received message types and actor methods
   @Override
   public Receive createReceive() {
@@ -92,12 +232,26 @@ public class Node extends AbstractActor {
       .match(Message.ReqActiveNodeList.class, this::onReqActiveNodeList)
       .match(Message.ResActiveNodeList.class, this::onResActiveNodeList)
       .match(Message.GetRequest.class, this::onGetRequest)
+      .match(Message.MultiGetRequest.class, this::onMultiGetRequest)
+      .match(Message.Batch.class, this::onBatch)
+      .match(Message.Busy.class, this::onBusy)
+      .match(Message.NextWrite.class, this::onNextWrite)
+      .match(Message.Locked.class, this::onLocked)
+      .match(Message.ScanRequest.class, this::onScanRequest)
+      .match(Message.ScanRead.class, this::onScanRead)
+      .match(Message.ScanItems.class, this::onScanItems)
+      .match(Message.ScanCredit.class, this::onScanCredit)
+      .match(Message.ScanTimeout.class, this::onScanTimeout)
       .match(Message.Read.class, this::onRead)
       .match(Message.ReadItemInformation.class, this::onReadItemInformation)
+      .match(Message.ReadDigest.class, this::onReadDigest)
       .match(Message.Version.class, this::onVersion)
       .match(Message.UpdateRequest.class, this::onUpdateRequest)
+      .match(Message.MultiUpdateRequest.class, this::onMultiUpdateRequest)
       .match(Message.UpdateVersion.class, this::onUpdateVersion)
       .match(Message.Write.class, this::onWrite)
+      .match(Message.DirectWrite.class, this::onDirectWrite)
+      .match(Message.WriteAck.class, this::onWriteAck)
       .match(Message.ReleaseLock.class, this::onReleaseLock)
       .match(Message.ReqDataItemsResponsibleFor.class, this::onReqDataItemsResponsibleFor)
       .match(Message.ReqDataItemsResponsibleFor_recovery.class, this::onReqDataItemsResponsibleFor_recovery)
@@ -117,6 +271,25 @@ public class Node extends AbstractActor {
       .match(Message.Timeout_AnnounceDeparture.class, this::onTimeout_AnnounceDeparture)
       .match(Message.Timeout_ReqActiveNodeList_recover.class, this::onTimeout_ReqActiveNodeList_recover_ignore)
       .match(Message.Timeout_ReqDataItemsResponsibleFor_recovery.class, this::onTimeout_ReqDataItemsResponsibleFor_recovery_ignore)
+      .match(Message.CommitWriteAheadLog.class, this::onCommitWriteAheadLog)
+      .match(Message.Checkpoint.class, this::onCheckpoint)
+      .match(Message.Rebalance.class, this::onRebalance)
+      .match(Message.LoadReport.class, this::onLoadReport)
+      .match(Message.RebalanceMove.class, this::onRebalanceMove)
+      .match(Message.ReadRepairWrite.class, this::onReadRepairWrite)
+      .match(Message.ReadRepairWindow.class, this::onReadRepairWindow)
+      .match(Message.ReadRepairAck.class, this::onReadRepairAck)
+      .match(Message.ReadRepairTimeout.class, this::onReadRepairTimeout)
+      .match(Message.PrintStats.class, this::onPrintStats)
+      .match(Message.HedgeTimeout.class, this::onHedgeTimeout)
+      .match(Message.AntiEntropy.class, this::onAntiEntropy)
+      .match(Message.MerkleSummary.class, this::onMerkleSummary)
+      .match(Message.MerkleLeaves.class, this::onMerkleLeaves)
+      .match(Message.AntiEntropyPush.class, this::onAntiEntropyPush)
+      .match(Message.HintTimeout.class, this::onHintTimeout)
+      .match(Message.HintReplayRequest.class, this::onHintReplayRequest)
+      .match(Message.HintReplay.class, this::onHintReplay)
+      .match(Message.HintReplayAck.class, this::onHintReplayAck)
       .build();
   }
 
@@ -128,6 +301,11 @@ public class Node extends AbstractActor {
       .match(Message.ResDataItemsResponsibleFor.class, this::onResDataItemsResponsibleFor_recovery)
       .match(Message.Timeout_ReqActiveNodeList_recover.class, this::onTimeout_ReqActiveNodeList_recover)
       .match(Message.Timeout_ReqDataItemsResponsibleFor_recovery.class, this::onTimeout_ReqDataItemsResponsibleFor_recovery)
+      .match(Message.CommitWriteAheadLog.class, msg -> {})  // the process is dead: nothing to commit
+      .match(Message.Checkpoint.class, msg -> {})
+      .match(Message.Rebalance.class, msg -> {})
+      .match(Message.LoadReport.class, msg -> {})
+      .match(Message.AntiEntropy.class, msg -> {})
       .matchAny(msg -> {
         System.out.println(getSelf().path().name() + " ignoring " + msg.getClass().getSimpleName() + " (crashed)");
       })
@@ -142,6 +320,7 @@ public class Node extends AbstractActor {
     System.out.println("["+this.getSelf().path().name()+"] [InitSystem] ");
     this.key = msg.key;
     this.peers.put(this.key, this.getSelf());
+    this.updateRoutingTable();
   }
 
   /*----------JOIN----------*/
@@ -219,26 +398,44 @@ public class Node extends AbstractActor {
       for (Map.Entry<Integer, ActorRef> pair : msg.activeNodes.entrySet()) {
         this.peers.put(pair.getKey(), pair.getValue());
       }
+      this.updateRoutingTable();
+
+      // compute the arcs of the ring the joining node is going to be responsible for. Each arc is requested
+      // to the first node of its current preference list (which holds the items of the arc): with virtual
+      // nodes the arcs are spread over the ring, so the items are collected as small slices from many peers
+      Set<Integer> ringWithJoiningNode = new HashSet<>(this.peers.keySet());
+      ringWithJoiningNode.add(this.key);
+      RoutingTable newRoutingTable = new RoutingTable(ringWithJoiningNode, this.N, this.config.tokensPerNode, this.config.partitioner);
+      long[] arcs = RoutingTable.getArcsGained(this.routingTable, newRoutingTable, this.key);
+      Map<Integer, List<Long>> arcsBySource = new TreeMap<>();
+      for(int i = 0; i < arcs.length; i += 2){
+        int source = this.routingTable.getPreferenceListOfToken(arcs[i])[0];
+        arcsBySource.computeIfAbsent(source, (k) -> new ArrayList<>()).add(arcs[i]);
+        arcsBySource.get(source).add(arcs[i + 1]);
+      }
+      System.out.println("[" + this.getSelf().path().name() + "] [onResActiveNodeList] Requesting my data items to: " + arcsBySource.keySet());
 
-      // get clocwise neighbor which has to be queried to request data items
-      // the joining node is responsible for
-      ActorRef clockwiseNeighbor = this.getClockwiseNeighbor();
-      System.out.println("[" + this.getSelf().path().name() + "] [onResActiveNodeList] My clockwise neighbour is: " + clockwiseNeighbor);
-
-      // request data items the joining node is responsible for from its clockwise neighbor (which holds all items it needs)
+      // request data items the joining node is responsible for from the peers which hold them
       this.flag_reqDataItemsResponsibleFor = false;
       this.timeout_ReqDataItemsResponsibleFor_expired = false;
-      Message.ReqDataItemsResponsibleFor clockwiseNeighborRequest = new Message.ReqDataItemsResponsibleFor(this.key);
+      this.join_pending_sources = arcsBySource.size();
+      this.join_item_source.clear();
+      for(Map.Entry<Integer, List<Long>> entry : arcsBySource.entrySet()){
+        long[] sourceArcs = new long[entry.getValue().size()];
+        for(int i = 0; i < sourceArcs.length; i++){
+          sourceArcs[i] = entry.getValue().get(i);
+        }
 
-      // model a random network/processing delay
-      try {
-        Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME * 100) * 10);
-      } catch (InterruptedException e) {
-        e.printStackTrace();
+        // model a random network/processing delay
+        try {
+          Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME * 100) * 10);
+        } catch (InterruptedException e) {
+          e.printStackTrace();
+        }
+        this.peers.get(entry.getKey()).tell(new Message.ReqDataItemsResponsibleFor(this.key, sourceArcs), this.getSelf());
       }
-      clockwiseNeighbor.tell(clockwiseNeighborRequest, this.getSelf());
 
-      // if the clocwise neighbour peer does not send a response before the timeout
+      // if one of the peers does not send a response before the timeout
       // we abort the join operation
       getContext().system().scheduler().scheduleOnce(
               Duration.create(this.T, TimeUnit.SECONDS),  // timeout interval
@@ -252,35 +449,33 @@ public class Node extends AbstractActor {
     }
   }
 
-  // the clockwise neighbour node is not sending a response
-  // --> abort join operation
+  // one of the peers which have been asked for data items is not sending a response
+  // --> abort join operation (and drop the items already received from the other peers)
   private void onTimeout_ReqDataItemsResponsibleFor(Message.Timeout_ReqDataItemsResponsibleFor msg){
     if(this.flag_reqDataItemsResponsibleFor == false){
       this.timeout_ReqDataItemsResponsibleFor_expired = true;
       System.out.println("["+this.getSelf().path().name()+"] [onTimeout_ReqDataItemsResponsibleFor] ABORT JOIN because no ResDataItemsResponsibleFor has been received before timeout expiration.");
       this.peers.clear();
+      this.updateRoutingTable();
+      this.clearItems();
     }
   }
 
-  // receive this request from a joining node "jn" which is requesting to its clockwise neighbor
+  // receive this request from a joining node "jn" which is requesting to the present node
   // the data items "jn" should be responsible for.
-  // The message msg contains the key of the joining node
+  // The message msg contains the key of the joining node and the arcs of the ring the present node has to send
   private void onReqDataItemsResponsibleFor(Message.ReqDataItemsResponsibleFor msg){
     System.out.println("["+this.getSelf().path().name()+"] [onReqDataItemsResponsibleFor]");
 
     // retrive message data
     Integer joiningNodeKey = msg.key;
 
-    // iterate the data item set to find the data items the joining node is responsible for
+    // the data items requested by the joining node are the ones in the arcs of the message
     Set<Item> resSet = new HashSet<>();
-    TreeSet<Integer> simulateNewRing = new TreeSet<>();
-    simulateNewRing.addAll(this.peers.keySet());
-    simulateNewRing.add(joiningNodeKey);
-    for (Map.Entry<Integer, Item> dataItem : this.items.entrySet()) {
-      if(this.getResponsibleNode(dataItem.getKey(), simulateNewRing).contains(joiningNodeKey)){
-        resSet.add(dataItem.getValue());
-      }
+    for (int itemKey : this.getItemKeysInArcs(msg.arcs)) {
+      resSet.add(this.items.get(itemKey));
     }
+    System.out.println("["+this.getSelf().path().name()+"] [onReqDataItemsResponsibleFor] "+resSet.size()+" data items for node "+joiningNodeKey);
 
     // send the list of data item that the joining node is responsible for
     Message.ResDataItemsResponsibleFor msg_response = new Message.ResDataItemsResponsibleFor(Collections.unmodifiableSet(resSet));
@@ -292,7 +487,7 @@ public class Node extends AbstractActor {
     this.getSender().tell(msg_response, this.getSelf());
   }
 
-  // the joining node receives the set of data items it is responsible for from its clockwise neighbor
+  // the joining node receives the set of data items it is responsible for from one of the peers which hold them
   private void onResDataItemsResponsibleFor(Message.ResDataItemsResponsibleFor msg){
 
     // ignore the message if the corresponding timeout has already expired
@@ -300,13 +495,19 @@ public class Node extends AbstractActor {
       return;
     }
 
-    this.flag_reqDataItemsResponsibleFor = true; // finally the ResDataItemsResponsibleFor has been received, we can go on with the join operation
     System.out.println("["+this.getSelf().path().name()+"] [onResDataItemsResponsibleFor]");
 
     // retrive message data and add the data items the joining node is responsible for
     for(Item item : msg.resSet) {
-      this.items.put(item.key, new Item(item.getKey(), item.getValue(), item.getVersion()));
+      this.storeItem(item);
+      this.join_item_source.put(item.getKey(), this.getSender());
+    }
+
+    // wait for the data items of the other peers
+    if(--this.join_pending_sources > 0){
+      return;
     }
+    this.flag_reqDataItemsResponsibleFor = true; // finally all the ResDataItemsResponsibleFor have been received, we can go on with the join operation
     System.out.println("["+this.getSelf().path().name()+"] [onResDataItemsResponsibleFor] Now I am responsible for the following data items:"+this.items.values());
 
     this.join_update_item_response_counter.clear();
@@ -314,7 +515,7 @@ public class Node extends AbstractActor {
     if(!this.items.isEmpty()){
 
       //--- perform read operations to ensure that the received items are up to date.
-      //--- remark: no read request is sent to the clockwise neighbor which has just sent the current set of items
+      //--- remark: no read request is sent to the peer which has just sent the item
       //--- for each item we compute the responsible nodes which are the destinations of the update request
       HashMap<Integer, HashSet<Integer>> readDestinationNodes = new HashMap<>();
 
@@ -323,8 +524,8 @@ public class Node extends AbstractActor {
       this.peers.keySet().forEach((peerKey) -> {readDestinationNodes.put(peerKey, new HashSet<>());});  
 
       for(Integer ik : this.items.keySet()){
-        for(Integer ik_resp_key : this.getResponsibleNode(ik)){
-          if(!this.peers.get(ik_resp_key).equals(this.getSender())){ // we have to ignore the clockwise neighbour which has already sent a response
+        for(int ik_resp_key : this.routingTable.getPreferenceList(ik)){
+          if(!this.peers.get(ik_resp_key).equals(this.join_item_source.get(ik))){ // we have to ignore the peer which has already sent the item
             this.join_update_item_response_counter.put(ik, 0);
             readDestinationNodes.get(ik_resp_key).add(ik);
           }
@@ -339,7 +540,7 @@ public class Node extends AbstractActor {
 
           Set<Item> itemSet = new HashSet<>();
           for(Integer itemKey : entry.getValue()){
-            itemSet.add(new Item(this.items.get(itemKey)));
+            itemSet.add(this.items.get(itemKey));
           }
 
           msg_JoinReadOperationReq = new Message.JoinReadOperationReq(Collections.unmodifiableSet(itemSet));
@@ -361,6 +562,7 @@ public class Node extends AbstractActor {
       
       // the node add itself to the list of nodes currently active
       this.peers.put(this.key, this.getSelf());
+      this.updateRoutingTable();
 
       // the node can finally announce its presence to every node in the system
       Set<Integer> announcePresenceKeyItemSet = new HashSet<>(this.items.keySet());
@@ -396,7 +598,8 @@ public class Node extends AbstractActor {
         System.out.println("["+this.getSelf().path().name()+"] [onTimeout_JoinReadOperationReq] ABORT JOIN because not all the expected nodes have sent a JoinReadOperationRes message");
         this.flag_ignore_further_read_update = true;
         this.peers.clear();
-        this.items.clear();
+        this.updateRoutingTable();
+        this.clearItems();
       }
     }
   }
@@ -410,10 +613,8 @@ public class Node extends AbstractActor {
     // have a higher version in this node
     Set<Item> updatedItems = new HashSet<>();
     for(Item item : msg.requestItemSet) {
-      if(this.items.containsKey(item.getKey())){  // the current node has the item
-        Item updatedItem = new Item(  item.key,
-                                      this.items.get(item.getKey()).getValue(),
-                                      this.items.get(item.getKey()).getVersion());
+      Item updatedItem = this.items.get(item.getKey());
+      if(updatedItem != null){  // the current node has the item
         updatedItems.add(updatedItem);
       }
     }
@@ -448,11 +649,8 @@ public class Node extends AbstractActor {
       // has received
       this.join_update_item_response_counter.put(item.getKey(), this.join_update_item_response_counter.get(item.getKey())+1);
 
-      if(this.items.get(item.getKey()).getVersion() < item.getVersion()){
-        Item updatedItem = new Item(  item.key,
-                                      item.getValue(),
-                                      item.getVersion());
-        this.items.put(updatedItem.getKey(), updatedItem);
+      if(this.items.getVersion(item.getKey()) < item.getVersion()){
+        this.storeItem(item);
       }
     }
 
@@ -471,6 +669,7 @@ public class Node extends AbstractActor {
 
     // the node add itself to the list of nodes currently active
     this.peers.put(this.key, this.getSelf());
+    this.updateRoutingTable();
 
     // the node can finally announce its presence to every node in the system
     Set<Integer> announcePresenceKeyItemSet = new HashSet<>(this.items.keySet());
@@ -494,16 +693,15 @@ public class Node extends AbstractActor {
     int msg_key = msg.key;  // the key of the new node which is asking to join the system
 
     // add the new node to the current list of active nodes
+    RoutingTable oldRoutingTable = this.routingTable;
     this.peers.put(msg_key, this.getSender());
+    this.updateRoutingTable();
 
-    // for each item in keyItemSet which is also in this.items, check if
-    // the present node is still responsible for. Consequently, remove the data items
-    // the present node is no longer responsible for. 
-    for(Integer itemKey : msg.keyItemSet){
-      if(this.items.keySet().contains(itemKey)){
-        if(!this.getResponsibleNode(itemKey).contains(this.key)){  // the present node is no more responsible for this item
-          this.items.remove(itemKey); // remove the item
-        }
+    // the tokens of the new node take over some arcs of the present node: it is no longer responsible for
+    // the items in those arcs. Remove the ones which are in keyItemSet, i.e. which are now stored by the new node
+    for(int itemKey : this.getItemKeysInArcs(RoutingTable.getArcsGained(this.routingTable, oldRoutingTable, this.key))){
+      if(msg.keyItemSet.contains(itemKey)){
+        this.removeItem(itemKey); // remove the item
       }
     }
 
@@ -520,6 +718,7 @@ public class Node extends AbstractActor {
     // Leave ABORTED since no enough replicas are there in the ring
     if(this.peers.size() <= this.N){
       System.out.println("["+this.getSelf().path().name()+"] [onLeaveMsg] Leave ABORTED since no enough replicas are there in the ring");
+      this.rebalanceRejoinKey = null;
       return;
     }
 
@@ -527,32 +726,19 @@ public class Node extends AbstractActor {
                                                       // responsible for after the departure of the present node
     this.peers.keySet().forEach((peerKey) -> {this.nodeKeyToResponsibleItem.put(peerKey, new HashSet<>());});  
 
-    // fill the list of responsible node (nodeKeyToResponsibleItem) for each item in this.items
-    for(Integer itemKey : this.items.keySet()){
-      Set<Integer> responsibleNodeKeys = this.getResponsibleNode(itemKey);
-      responsibleNodeKeys.forEach((respNodeKey) -> {
-        if(respNodeKey != this.key){
-          HashSet<Integer> respNodeSet = this.nodeKeyToResponsibleItem.get(respNodeKey);
-          respNodeSet.add(itemKey);
-        }
-      });
-    }
+    RoutingTable routingTableBeforeDeparture = this.routingTable;
 
     // remove the present node from the list of active nodes
-    this.peers.remove(this.key);                                                                          
-    
-    // after the removal of the present node we compute again the responsabilites for each item in this.items
-    // and we keep only the differences, i.e. if the node was not responsible for this item before, but it becomes
-    // responsible of the item only now that the present node left the ring
-    for(Integer itemKey : this.items.keySet()){
-      Set<Integer> responsibleNodeKeys = this.getResponsibleNode(itemKey);
-      responsibleNodeKeys.forEach((respNodeKey) -> {
-        if(this.nodeKeyToResponsibleItem.get(respNodeKey).contains(itemKey)){ // in this case the node was already resoponsible for the item even before the departure of the present node
-          this.nodeKeyToResponsibleItem.get(respNodeKey).remove(itemKey);
-        }else{
-          this.nodeKeyToResponsibleItem.get(respNodeKey).add(itemKey);
-        }
-      });
+    this.peers.remove(this.key);
+    this.updateRoutingTable();
+
+    // after the departure of the present node each of the arcs it was responsible for is taken over by
+    // another peer: fill nodeKeyToResponsibleItem with the items in the arcs every peer gains.
+    // With virtual nodes the arcs are spread over the ring, so the items are passed as small slices to many peers
+    for(Integer peerKey : this.peers.keySet()){
+      for(int itemKey : this.getItemKeysInArcs(RoutingTable.getArcsGained(routingTableBeforeDeparture, this.routingTable, peerKey))){
+        this.nodeKeyToResponsibleItem.get(peerKey).add(itemKey);
+      }
     }
 
     // before completing the execution of the leave, we need to be sure that the peers
@@ -579,9 +765,7 @@ public class Node extends AbstractActor {
         // prepare announce departure message
         Set<Item> announceDepartureSet = new HashSet<>();
         this.nodeKeyToResponsibleItem.get(k).forEach((ik) -> {
-          announceDepartureSet.add( new Item( ik, 
-                                              this.items.get(ik).getValue(),
-                                              this.items.get(ik).getVersion()));
+          announceDepartureSet.add(this.items.get(ik));
           });
         
         // model a random network/processing delay
@@ -592,9 +776,13 @@ public class Node extends AbstractActor {
 
       // remove all the peers since the node is no more part of the ring
       this.peers.clear();
+      this.updateRoutingTable();
 
       // remove all the data items, since the present node is no more responsible for them
-      this.items.clear();
+      this.clearItems();
+
+      // the leave has been requested by the rebalancer: join again with the new key
+      this.rejoinAfterRebalance();
 
     }else{  // set timeout
       // if the peers which should become responsible of some of the data items of the present node
@@ -637,9 +825,7 @@ public class Node extends AbstractActor {
         // prepare announce departure message
         Set<Item> announceDepartureSet = new HashSet<>();
         this.nodeKeyToResponsibleItem.get(k).forEach((ik) -> {
-          announceDepartureSet.add( new Item( ik, 
-                                              this.items.get(ik).getValue(),
-                                              this.items.get(ik).getVersion()));
+          announceDepartureSet.add(this.items.get(ik));
           });
 
         p.tell(new Message.AnnounceDeparture(this.key, Collections.unmodifiableSet(announceDepartureSet)), this.getSelf());
@@ -647,12 +833,16 @@ public class Node extends AbstractActor {
 
       // remove all the peers since the node is no more part of the ring
       this.peers.clear();
+      this.updateRoutingTable();
 
       // remove all the data items, since the present node is no more responsible for them
-      this.items.clear();
+      this.clearItems();
 
       // clear responsible node
       this.nodeKeyToResponsibleItem.clear();
+
+      // the leave has been requested by the rebalancer: join again with the new key
+      this.rejoinAfterRebalance();
     }
 
   }
@@ -665,6 +855,8 @@ public class Node extends AbstractActor {
       this.timeout_AnnounceDeparture_expired = true;
       System.out.println("["+this.getSelf().path().name()+"] [onTimeout_AnnounceDeparture] ABORT LEAVE because not all the ACK have been receiver from the target nodes.");
       this.peers.put(this.key, this.getSelf());
+      this.updateRoutingTable();
+      this.rebalanceRejoinKey = null;  // the node stays where it is
     }
   }
 
@@ -678,13 +870,21 @@ public class Node extends AbstractActor {
 
     // remove the node which is leaving from the ring
     this.peers.remove(leavingNodeKey);
+    this.updateRoutingTable();
 
     // add data items of which the present node is responsible for after the departure of the leaving node
     for(Item item : msg.itemSet){
-      Item updatedItem = new Item(  item.key,
-                                    item.getValue(),
-                                    item.getVersion());
-      this.items.put(updatedItem.getKey(), updatedItem);
+      this.storeItem(item);
+    }
+
+    // the hints kept for the leaving node will never be replayed: keep the items the present node is now responsible for
+    Map<Integer, Item> leavingNodeHints = this.hints.remove(leavingNodeKey);
+    if(leavingNodeHints != null){
+      for(Item item : leavingNodeHints.values()){
+        if(this.routingTable.isResponsible(this.key, item.getKey()) && this.items.getVersion(item.getKey()) < item.getVersion()){
+          this.storeItem(item);
+        }
+      }
     }
 
   }
@@ -699,6 +899,41 @@ public class Node extends AbstractActor {
   // Receive CrashMsg and go to crash state
   private void onCrashMsg(Message.CrashMsg msg){
     System.out.println("["+this.getSelf().path().name()+"] [onCrashMsg]");
+
+    // a crashed node sends nothing: the clients of its requests find out through their own timeouts. The
+    // scans are dropped, their timeouts would be ignored while the node is crashed
+    this.scans.values().forEach(scan -> scan.setTimer(null));
+    this.scans.clear();
+
+    // a node with a write-ahead log simulates a process death: the records which have not been
+    // committed and the content of the memory are lost. The items are rebuilt from the log on recovery.
+    // Without a log the requests are kept and they expire on recovery (expireRequests)
+    if(this.wal != null){
+      this.wal.discardPending();
+      this.items.clear();
+      if(this.merkleTree != null){
+        this.merkleTree.clear();
+      }
+      this.locks.clear();
+      // the requests are lost with the memory of the process, their clients time out
+      for(Request req : this.requests.values()){
+        this.requestTimersCancelled += req.cancelTimers();
+      }
+      for(Deque<Request> queue : this.writeQueues.values()){
+        for(Request req : queue){
+          this.requestTimersCancelled += req.cancelTimers();
+        }
+      }
+      for(Request req : this.syncRepairs.values()){
+        this.requestTimersCancelled += req.cancelTimers();
+      }
+      this.requests.clear();
+      this.writeQueues.clear();
+      this.syncRepairs.clear();
+      this.readRepairs.clear();
+      this.siblings.clear();
+      this.hints.clear();
+    }
     this.crash();
   }
 
@@ -721,6 +956,24 @@ public class Node extends AbstractActor {
 
     // clear current local knowledge of nodes currently active in the network
     this.peers.clear();
+    this.updateRoutingTable();
+
+    // load the last snapshot and replay the write-ahead log written after it: the node gets back the items
+    // it had before the crash and it will ask its peers only for the items it has missed
+    // (the ones it does not have and the ones with a version newer than its own)
+    if(this.wal != null){
+      try {
+        if(this.snapshot.exists()){
+          int snapshotItems = this.snapshot.load(this.items);
+          System.out.println("["+this.getSelf().path().name()+"] [onRecoveryMsg] Loaded "+snapshotItems+" items from the snapshot");
+        }
+        int records = this.wal.replay(this.items);
+        System.out.println("["+this.getSelf().path().name()+"] [onRecoveryMsg] Replayed "+records+" records of the write-ahead log: "+this.items.size()+" items");
+        this.rebuildMerkleTree();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
 
     // i. requests the current set of nodes from a node specified in the recovery request;
     // model a random network/processing delay
@@ -774,29 +1027,52 @@ public class Node extends AbstractActor {
     // indeed the present node has removed all the elements of this.peers
     // in onRecoveryMsg
     this.peers.put(this.key, this.getSelf());
+    this.updateRoutingTable();
 
     // ii. the node which is recovering should discard those items that are no longer under its responsability
     Set<Item> backup = new HashSet<>(); // we make a backup of those items that are no longer under the responsability of the present node. In this way, in the case of a timeout we can recover these items before aborting the recovery operation.
-    for(Integer ik : this.items.keySet()){
-      Set<Integer> responsibleNodes = this.getResponsibleNode(ik);
-      if(!responsibleNodes.contains(this.key)){
-        backup.add(new Item(ik, this.items.get(ik).getValue(), this.items.get(ik).getVersion()));
-      }
+    for(int ik : this.getItemKeysInArcs(this.routingTable.getArcs(this.key, false))){ // the items outside the arcs of the present node
+      backup.add(this.items.get(ik));
     }
     for(Item backup_item : backup){
-      this.items.remove(backup_item.getKey());
+      this.removeItem(backup_item.getKey());
     }
 
-    // the node which is recovering should obtain the items that are now under its responsability
-    // this information can be retrived from the clockwise neighbor (which holds all items it needs)
-    ActorRef clockwiseNeighbor = this.getClockwiseNeighbor();
-    System.out.println("["+this.getSelf().path().name()+"] [onResActiveNodeList_recovery] My clockwise neighbour is: "+clockwiseNeighbor);
+    // the node which is recovering should obtain the items that are now under its responsability.
+    // Each of its arcs is requested to the first other node of the preference list of the arc, which holds
+    // its items: with virtual nodes or MURMUR3 the arcs are spread over many peers, as for the join
+    long[] arcs = this.routingTable.getArcs(this.key, true);
+    Map<Integer, List<Long>> arcsBySource = new TreeMap<>();
+    for(int i = 0; i < arcs.length; i += 2){
+      for(int node : this.routingTable.getPreferenceListOfToken(arcs[i])){
+        if(node != this.key){
+          arcsBySource.computeIfAbsent(node, (k) -> new ArrayList<>()).add(arcs[i]);
+          arcsBySource.get(node).add(arcs[i + 1]);
+          break;
+        }
+      }
+    }
+    System.out.println("["+this.getSelf().path().name()+"] [onResActiveNodeList_recovery] Requesting my data items to: " + arcsBySource.keySet());
     this.flag_reqDataItemsResponsibleFor_recovery = false;
     this.timeout_ReqDataItemsResponsibleFor_recovery_expired = false;
-    Message.ReqDataItemsResponsibleFor_recovery clockwiseNeighborRequest = new Message.ReqDataItemsResponsibleFor_recovery(this.key, this.items.keySet());
-    clockwiseNeighbor.tell(clockwiseNeighborRequest, this.getSelf());
+    this.recovery_pending_sources = arcsBySource.size();
+    if(arcsBySource.isEmpty()){
+      this.completeRecovery();   // no other node holds items of the present node
+      return;
+    }
+    Map<Integer, Long> keyVersionMap = new HashMap<>();
+    for(int ik : this.items.keys()){
+      keyVersionMap.put(ik, this.items.getVersion(ik));
+    }
+    for(Map.Entry<Integer, List<Long>> entry : arcsBySource.entrySet()){
+      long[] sourceArcs = new long[entry.getValue().size()];
+      for(int i = 0; i < sourceArcs.length; i++){
+        sourceArcs[i] = entry.getValue().get(i);
+      }
+      this.peers.get(entry.getKey()).tell(new Message.ReqDataItemsResponsibleFor_recovery(this.key, keyVersionMap, sourceArcs), this.getSelf());
+    }
 
-    // if the clockwise neighbour peer does not send a response before the timeout
+    // if one of the peers does not send a response before the timeout
     // we abort the recovery process
     getContext().system().scheduler().scheduleOnce(
       Duration.create(this.T, TimeUnit.SECONDS),  // timeout interval
@@ -808,18 +1084,19 @@ public class Node extends AbstractActor {
 
   }
 
-  // the clockwise neighbour node is not sending a response
+  // one of the peers which hold the items of the node is not sending a response
   // --> abort recovery operation
   private void onTimeout_ReqDataItemsResponsibleFor_recovery(Message.Timeout_ReqDataItemsResponsibleFor_recovery msg){
     if(this.flag_reqDataItemsResponsibleFor_recovery == false){
       this.timeout_ReqDataItemsResponsibleFor_recovery_expired = true;
       System.out.println("["+this.getSelf().path().name()+"] [onTimeout_ReqDataItemsResponsibleFor_recovery] ABORT RECOVERY because no ReqDataItemsResponsibleFor_recovery has been received before timeout expiration.");
       this.peers.clear();
+      this.updateRoutingTable();
 
       // restore the data items that have been deleted by the present node during the recovery process
       // because they would have been no more under its responsability
       for(Item it : msg.backupItemSet){
-        this.items.put(it.getKey(), new Item(it.getKey(), it.getValue(), it.getVersion()));
+        this.storeItem(it);
       }
     }
   }
@@ -833,16 +1110,15 @@ public class Node extends AbstractActor {
     System.out.println("["+this.getSelf().path().name()+"] [onReqDataItemsResponsibleFor_recovery]");
 
     // retrive message data
-    Integer recoveryNodeKey = msg.key;
-    HashSet<Integer> recoveryNodeItemSet = new HashSet<>();
-    msg.keyItemSet.forEach(itemKey -> recoveryNodeItemSet.add(itemKey));
+    Map<Integer, Long> recoveryNodeVersions = msg.keyVersionMap;
 
-    // iterate the data item set to find the data items the joining node is responsible for
+    // iterate the data item set to find the data items the recovering node is responsible for
+    // and that it does not have (or it has with an older version)
     Set<Item> resSet = new HashSet<>();
-    for(int k : this.items.keySet()){
-      Set<Integer> currentItemResp = this.getResponsibleNode(k);
-      if(currentItemResp.contains(recoveryNodeKey) && !recoveryNodeItemSet.contains(k)){
-        resSet.add(new Item(k, this.items.get(k).getValue(), this.items.get(k).getVersion()));
+    for(int k : this.getItemKeysInArcs(msg.arcs)){
+      Long recoveryNodeVersion = recoveryNodeVersions.get(k);
+      if(recoveryNodeVersion == null || recoveryNodeVersion < this.items.getVersion(k)){
+        resSet.add(this.items.get(k));
       }
     }
 
@@ -853,7 +1129,7 @@ public class Node extends AbstractActor {
 
   // iii. obtain the items that are now under its responsability
   // the node which is currently in crash state receivers the items that are now under its responsability
-  // from its clockwise neighbor
+  // from the peers which hold its arcs
   private void onResDataItemsResponsibleFor_recovery(Message.ResDataItemsResponsibleFor msg){
 
     // ignore the message if the corresponding timeout has already expired
@@ -861,107 +1137,303 @@ public class Node extends AbstractActor {
       return;
     }
 
-    this.flag_reqDataItemsResponsibleFor_recovery = true; // finally the ResDataItemsResponsibleFor has been received, we can go on with the recovery operation without aborting
     System.out.println("["+this.getSelf().path().name()+"] [onResDataItemsResponsibleFor_recovery]");
 
     // retrive message data and add the data items the recovery node is responsible for.
     for(Item item : msg.resSet) {
-      this.items.put(item.key, new Item(item.key, item.value, item.version));
+      if(this.items.getVersion(item.getKey()) < item.getVersion()){
+        this.storeItem(item);
+      }
     }
+
+    // wait for the data items of the other peers
+    if(--this.recovery_pending_sources > 0){
+      return;
+    }
+    this.completeRecovery();
+  }
+
+  // all the peers asked have sent the items of the recovering node
+  private void completeRecovery(){
+    this.flag_reqDataItemsResponsibleFor_recovery = true; // finally all the ResDataItemsResponsibleFor have been received, we can go on with the recovery operation without aborting
     System.out.println("["+this.getSelf().path().name()+"] [onResDataItemsResponsibleFor_recovery] Now I am responsible for the following data items:"+this.items.values());
 
     // exit crash state 
     this.recover();
+    this.expireRequests();
+
+    // sloppy quorum: ask the peers for the items they have written in place of the present node while it was crashed
+    if(this.config.sloppyQuorumTimeoutMs > 0){
+      for(Map.Entry<Integer, ActorRef> peer : this.peers.entrySet()){
+        if(peer.getKey() != this.key){
+          peer.getValue().tell(new Message.HintReplayRequest(this.key), this.getSelf());
+        }
+      }
+    }
+  }
+
+  // The timeouts of the requests coordinated by the node have been ignored while it was crashed: the requests
+  // expire now, as if their timeout had just been delivered (the locks taken by the updates are released)
+  private void expireRequests(){
+    List<Request> expired = new ArrayList<>(this.requests.values());
+    for(Deque<Request> queue : this.writeQueues.values()){
+      for(Request req : queue){
+        if(!this.requests.containsKey(req.getRequestId())){
+          expired.add(req);
+        }
+      }
+    }
+    for(Request req : expired){
+      this.onTimeout(new Message.Timeout(req.getRequestId(), req.getItem().getKey()));
+    }
+    for(Request req : new ArrayList<>(this.syncRepairs.values())){
+      this.finishSyncRepair(req);
+    }
   }
 
   /*----------END RECOVERY----------*/
 
-  /*----------GET RESPONSIBLE NODES FOR AN ITEM----------*/
+  /*----------WRITE-AHEAD LOG----------*/
 
-  // given a key, get the set of actors which are responsible
-  // for that item according to N
-  private Set<Integer> getResponsibleNode(int key){
-    Set<Integer> responsibleNode = new HashSet<>();
-    int n = this.N;
+  // every write of an item goes through this method: the item is stored and,
+  // if the write-ahead log is enabled, appended to the log
+  private void storeItem(Item item){
+    if(this.merkleTree != null){
+      this.merkleTree.update(this.config.partitioner.token(item.getKey()), item.getKey(), this.items.getVersion(item.getKey()), item.getVersion());
+    }
+    this.items.put(item);
+    if(this.wal != null){
+      try { this.wal.append(item); }
+      catch (IOException e) { e.printStackTrace(); }
+    }
+  }
 
-    //For each node, check if it is responsible for the item based on the key
-    for (Map.Entry<Integer, ActorRef> entry : peers.entrySet()) {
-      //A node is responsible for an item if N > 0 and the key of the item is lower than the key of the nodes
-      if(n > 0 && key < entry.getKey()){
-        //If the condition is satisfied we add the key of the node and decrease N, which is the number of nodes responsible for an item
-        responsibleNode.add(entry.getKey());
-        n--;
-      }
+  // remove an item the node is no more responsible for
+  private void removeItem(int itemKey){
+    if(this.merkleTree != null){
+      this.merkleTree.update(this.config.partitioner.token(itemKey), itemKey, this.items.getVersion(itemKey), -1);
+    }
+    this.items.remove(itemKey);
+  }
 
-      //If we get enough nodes, we can stop locking at the nodes
-      if(n <= 0){
-        break;
+  // remove all the data items; the log and the snapshot are emptied too, since the node is no more responsible for them
+  private void clearItems(){
+    this.items.clear();
+    if(this.merkleTree != null){
+      this.merkleTree.clear();
+    }
+    this.siblings.clear();
+    if(this.wal != null){
+      try {
+        this.wal.reset();
+        this.snapshot.delete();
       }
+      catch (IOException e) { e.printStackTrace(); }
     }
+  }
 
-    //If N is greater than 0, this means that we have not enough nodes and we will made the first nodes responsible for the item
-    //i. this happens when the key of the item is greated of all the item of the nodes or when
-    //ii. we have not enough nodes with a greater key than the item key
-    //In both cases the items will be assigned to the first N available nodes
-    if(n > 0){
-      for (Map.Entry<Integer, ActorRef> entry : peers.entrySet()) {
-        if(n > 0){
-          responsibleNode.add(entry.getKey());
-          n--;
-        } else {
-          break;
-        }
-      }
+  // commit the records of the write-ahead log which are still pending (group commit)
+  private void onCommitWriteAheadLog(Message.CommitWriteAheadLog msg){
+    try { this.wal.commit(); }
+    catch (IOException e) { e.printStackTrace(); }
+
+    if(this.config.checkpointLogRecords > 0 && this.wal.getCommittedRecords() >= this.config.checkpointLogRecords){
+      this.checkpoint();
     }
+  }
 
-    return responsibleNode;
+  private void onCheckpoint(Message.Checkpoint msg){
+    this.checkpoint();
   }
 
-  // overwrite getResponsibleNode: in this implementation we set also the set of peer to take into account
-  private Set<Integer> getResponsibleNode(int key, TreeSet<Integer> peerRing){
-    Set<Integer> responsibleNode = new HashSet<>();
-    int n = this.N;
+  // write the items in the snapshot and truncate the log: every record of the log is already in the snapshot.
+  // If the node crashes before the log is truncated, the replay simply finds items already loaded from the snapshot
+  private void checkpoint(){
+    try {
+      this.snapshot.write(this.items);
+      this.wal.reset();
+      System.out.println("["+this.getSelf().path().name()+"] [checkpoint] "+this.items.size()+" items written in the snapshot");
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /*----------END WRITE-AHEAD LOG----------*/
+
+  /*----------REBALANCING----------*/
 
-    for (Integer peerKey : peerRing) {
-      if(n > 0 && key < peerKey){
-        responsibleNode.add(peerKey);
-        n--;
+  // every rebalanceIntervalMs the node reports to its peers the rate of the requests it served in the last window.
+  // If its rate stays above rebalanceOverloadFactor times the average of the ring for rebalanceWindows windows,
+  // the node asks the least loaded peer to move on the ring next to its hot keys (RebalanceMove)
+  private void onRebalance(Message.Rebalance msg){
+    double rate = this.sampler.getRate();
+    long accesses = this.sampler.getAccesses();
+    Map<Integer, Long> hotKeys = this.sampler.getHotKeys();
+    this.sampler.reset();
+
+    // the node is not part of the ring (it is joining or it has left)
+    if(!this.getSelf().equals(this.peers.get(this.key))){
+      return;
+    }
+
+    // report the load to the peers
+    this.peerLoad.put(this.key, rate);
+    this.peerLoad.keySet().retainAll(this.peers.keySet());
+    Message.LoadReport loadReport = new Message.LoadReport(this.key, rate);
+    this.peers.forEach((k, p) -> {
+      if(!p.equals(this.getSelf())){
+        p.tell(loadReport, this.getSelf());
+      }
+    });
+
+    // average of the nodes which have reported their load
+    double average = 0;
+    for(double load : this.peerLoad.values()){
+      average += load;
+    }
+    average /= this.peerLoad.size();
+
+    if(this.peerLoad.size() > 1 && rate > this.config.rebalanceOverloadFactor * average){
+      this.overloadedWindows++;
+    } else {
+      this.overloadedWindows = 0;
+    }
+    if(this.overloadedWindows < this.config.rebalanceWindows || this.peers.size() <= this.N){
+      return;
+    }
+    this.overloadedWindows = 0;
+
+    // least loaded peer
+    Integer lightNodeKey = null;
+    for(Map.Entry<Integer, Double> entry : this.peerLoad.entrySet()){
+      if(entry.getKey() != this.key && (lightNodeKey == null || entry.getValue() < this.peerLoad.get(lightNodeKey))){
+        lightNodeKey = entry.getKey();
       }
+    }
+    if(lightNodeKey == null){
+      return;
+    }
+
+    Integer newKey = this.chooseRebalanceKey(lightNodeKey, hotKeys, accesses, rate, average);
+    if(newKey != null){
+      System.out.println("["+this.getSelf().path().name()+"] [onRebalance] rate "+String.format("%.1f", rate)+" req/s, ring average "+String.format("%.1f", average)+" req/s: node "+lightNodeKey+" is asked to move to key "+newKey);
+      this.peers.get(lightNodeKey).tell(new Message.RebalanceMove(newKey), this.getSelf());
+    }
+  }
 
-      if(n <= 0){
-        break;
+  // choose the key the light node should join with. Among the candidates (the keys right after the hot keys with the
+  // RAW partitioner, plus random keys) pick the one which brings the estimated rate of the present node closest to the
+  // ring average, null if no candidate improves it. The estimate assumes that the accesses to the sampled keys move
+  // with their arcs, while the other accesses of the window stay on the present node
+  private Integer chooseRebalanceKey(int lightNodeKey, Map<Integer, Long> hotKeys, long accesses, double rate, double average){
+    if(accesses == 0 || hotKeys.isEmpty()){
+      return null;
+    }
+    List<Integer> candidates = new ArrayList<>();
+    if(this.config.partitioner == Partitioner.RAW){
+      for(int hotKey : hotKeys.keySet()){
+        if(hotKey != Integer.MAX_VALUE){
+          candidates.add(hotKey + 1);  // the first token of the light node follows the hot key
+        }
       }
     }
+    for(int i = 0; i < REBALANCE_RANDOM_CANDIDATES; i++){
+      candidates.add(this.rnd.nextInt());
+    }
 
-    if(n > 0){
-      for (Integer peerKey : peerRing) {
-        if(n > 0){
-          responsibleNode.add(peerKey);
-          n--;
-        } else {
-          break;
+    Set<Integer> ring = new HashSet<>(this.peers.keySet());
+    ring.remove(lightNodeKey);
+    Integer bestKey = null;
+    double bestDistance = Math.abs(rate - average);
+    for(int candidate : candidates){
+      if(ring.contains(candidate)){
+        continue;
+      }
+      ring.add(candidate);
+      RoutingTable candidateRoutingTable = new RoutingTable(ring, this.N, this.config.tokensPerNode, this.config.partitioner);
+      ring.remove(candidate);
+
+      long movedAccesses = 0;
+      for(Map.Entry<Integer, Long> entry : hotKeys.entrySet()){
+        if(!candidateRoutingTable.isResponsible(this.key, entry.getKey())){
+          movedAccesses += entry.getValue();
         }
       }
+      double estimatedRate = rate * Math.max(accesses - movedAccesses, 0) / accesses;
+      double distance = Math.abs(estimatedRate - average);
+      if(distance < bestDistance){
+        bestDistance = distance;
+        bestKey = candidate;
+      }
     }
+    return bestKey;
+  }
 
-    return responsibleNode;
+  private void onLoadReport(Message.LoadReport msg){
+    this.peerLoad.put(msg.key, msg.requestRate);
   }
 
-  /*----------END GET RESPONSIBLE NODES FOR AN ITEM----------*/
+  // the present node has been chosen by an overloaded peer to take over part of its arcs: it leaves the ring and
+  // joins again with the new key. Both steps are the usual leave and join operations, hence the items are moved
+  // online with the usual messages while the other nodes keep serving the clients
+  private void onRebalanceMove(Message.RebalanceMove msg){
+    if(this.rebalanceRejoinKey != null || this.peers.size() <= this.N || this.peers.containsKey(msg.key)
+       || !this.getSelf().equals(this.peers.get(this.key))){
+      System.out.println("["+this.getSelf().path().name()+"] [onRebalanceMove] move to key "+msg.key+" ignored");
+      return;
+    }
+    System.out.println("["+this.getSelf().path().name()+"] [onRebalanceMove] moving from key "+this.key+" to key "+msg.key);
+    this.rebalanceRejoinKey = msg.key;
+    this.rebalanceBootstrappingPeer = this.getSender();
+    this.getSelf().tell(new Message.LeaveMsg(), this.getSelf());
+  }
+
+  // complete the move requested by RebalanceMove: the leave is over, join again with the new key
+  private void rejoinAfterRebalance(){
+    if(this.rebalanceRejoinKey != null){
+      this.getSelf().tell(new Message.JoinMsg(this.rebalanceRejoinKey, this.rebalanceBootstrappingPeer), this.getSelf());
+      this.rebalanceRejoinKey = null;
+      this.rebalanceBootstrappingPeer = null;
+    }
+  }
 
-  // get clockwise neighbor
-  // this function is called in the context of join and recovery operations
-  private ActorRef getClockwiseNeighbor(){
+  /*----------END REBALANCING----------*/
 
-    for(Map.Entry<Integer, ActorRef> entry : this.peers.entrySet()) {
-      if(this.key < entry.getKey()){
-        return entry.getValue();
-      }
+  /*----------GET RESPONSIBLE NODES FOR AN ITEM----------*/
+
+  // rebuild the routing table from the current peers; it must be called every time peers changes
+  private void updateRoutingTable(){
+    this.routingTable = new RoutingTable(this.peers.keySet(), this.N, this.config.tokensPerNode, this.config.partitioner);
+  }
+
+  // keys of the stored items in the arc of tokens [from, to) of the ring: the arc wraps around the end of the
+  // token space if from >= to, and it is the whole ring if from == to.
+  // The keys are extracted with range queries on the store, without iterating all its items
+  private int[] getItemKeysInArc(long from, long to){
+    if(from < to){
+      return this.items.keysInTokenRange(from, to - 1);
     }
+    int[] tail = this.items.keysInTokenRange(from, Long.MAX_VALUE);
+    int[] head = to == Long.MIN_VALUE ? new int[0] : this.items.keysInTokenRange(Long.MIN_VALUE, to - 1);
+    int[] keys = Arrays.copyOf(tail, tail.length + head.length);
+    System.arraycopy(head, 0, keys, tail.length, head.length);
+    return keys;
+  }
 
-    return ((TreeMap<Integer, ActorRef>) this.peers).firstEntry().getValue();
+  // keys of the stored items in the arcs {from0, to0, from1, to1, ...} returned by the routing table
+  private int[] getItemKeysInArcs(long[] arcs){
+    int[] keys = new int[0];
+    for(int i = 0; i < arcs.length; i += 2){
+      int[] arcKeys = this.getItemKeysInArc(arcs[i], arcs[i + 1]);
+      int length = keys.length;
+      keys = Arrays.copyOf(keys, length + arcKeys.length);
+      System.arraycopy(arcKeys, 0, keys, length, arcKeys.length);
+    }
+    return keys;
   }
 
+  /*----------END GET RESPONSIBLE NODES FOR AN ITEM----------*/
+
   /*----------GET----------*/
 
   //The Get operation is performed in this way:
@@ -980,61 +1452,104 @@ public class Node extends AbstractActor {
   // V. if it is not reached ask to the other responsible nodes
   // VI. if it is reached return the response and delete the request
   private void onGetRequest(Message.GetRequest msg){
-    Item item =  new Item(msg.item);
-    String clientName = msg.clientName;
+    this.startGet(msg.clientName, msg.requestId, msg.item, null);
+  }
+
+  // get of several items: the reads of all the items are sent together to every replica (see Message.Batch)
+  private void onMultiGetRequest(Message.MultiGetRequest msg){
+    Map<Integer, Item> requested = new LinkedHashMap<>();
+    for(Item item : msg.items){
+      requested.putIfAbsent(item.getKey(), item);
+    }
+    System.out.println("["+msg.clientName+"] [onMultiGet] Coordinator: " + requested.size() + " items");
+    if(requested.isEmpty()){
+      this.getSender().tell(new ClientMessage.MultiGetResult(Collections.emptyMap(), msg.requestId), ActorRef.noSender());
+      return;
+    }
+    BatchRequest batch = new BatchRequest(this.getSender(), msg.requestId, requested.size());
+    this.outbox = new HashMap<>();
+    try {
+      for(Item item : requested.values()){
+        this.startGet(msg.clientName, msg.requestId, item, batch);
+      }
+    } finally {
+      this.flushOutbox();
+    }
+  }
+
+  private void startGet(String clientName, long clientRequestId, Item requested, BatchRequest batch){
+    Item item =  new Item(requested);
+    long requestId = this.nextRequestId();
     System.out.println("["+clientName+"] [onGet] Coordinator");
 
     // i. set a new request
-    Request req = new Request(this.getSender(), item, Type.GET, clientName);
-    this.requests.put(clientName, req);
+    Request req = new Request(this.getSender(), item, Type.GET, clientName, requestId, clientRequestId);
+    req.setBatch(batch);
+    this.requests.put(requestId, req);
 
     // ii. get the responsible nodes for the item provided
-    Set<Integer> respNodes = getResponsibleNode(item.getKey());
+    int[] respNodes = this.routingTable.getPreferenceList(item.getKey());
 
     // iii. if the coordinator is one of the responsible nodes it will read it
-    if(respNodes.contains(this.key)){
+    if(RoutingTable.contains(respNodes, this.key)){
       //Check if no lock is present on the item
       // if no lock is set, the coordinator can read the item
       // if it is set, the coordinator cannot read the item since a write operation is ongoing and version problems could arise
-      if(this.items.containsKey(item.getKey()) && this.locks.get(item.getKey()) == null) {
+      this.sampler.record(item.getKey());
+      Item itemNode = this.items.get(item.getKey());
+      if(itemNode != null && this.locks.get(item.getKey()) == null) {
         req.setOperationCounter(req.getOperationCounter() + 1);
-        item.setVersion(this.items.get(item.getKey()).getVersion());
-        item.setValue(this.items.get(item.getKey()).getValue());
+        req.getReplicaVersions().put(this.getSelf(), itemNode.getVersion());
+        item.setVersion(itemNode.getVersion());
+        item.setValue(itemNode.getValue());
+        for (Item sibling : this.getSiblings(item.getKey())) {
+          addSibling(req.getSiblings(), sibling);
+        }
         System.out.println("["+clientName+"] [onGet] Coordinator Read: " + item);
+      } else if(this.locks.get(item.getKey()) != null) {
+        req.getRefusals().add(this.getSelf());
       }
     }
 
     int nR = req.getOperationCounter();
 
     // iV. check if the quorum R is reached
-    if(nR < this.R) {
-      //Send a message to all the responsible nodes
+    if(nR < this.R && this.abortIfUnreachable(req)) {
+      return;
+    } else if(nR < this.R) {
+      //Avoid to send the message to itself (message directly read before)
+      List<Integer> replicas = new ArrayList<>();
       for (int node : respNodes) {
-        //Avoid to send the message to itself (message directly read before)
         if(node != this.key) {
-          // model a random network/processing delay
-          try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
-          catch (InterruptedException e) { e.printStackTrace(); }
-          (peers.get(node)).tell(new Message.Read(clientName, item), this.getSelf());
+          replicas.add(node);
         }
       }
 
+      //With hedged or digest reads the fastest replicas come first: the fastest one returns the value
+      if(this.config.hedgePercentile > 0 || this.config.digestReads) {
+        replicas.sort(Comparator.comparingDouble(node -> this.latencies.getAverage(this.peers.get(node))));
+      }
+
+      //Send a message to all the responsible nodes; with hedged reads, only to the fastest ones which are
+      //needed to reach R, the others are contacted if the quorum is not reached within the hedge delay
+      int contacted = replicas.size();
+      if(this.config.hedgePercentile > 0) {
+        contacted = Math.min(replicas.size(), this.R - nR);
+        long hedgeDelay = Math.max(this.config.hedgeMinDelayMs, this.latencies.getPercentile(this.config.hedgePercentile, this.config.hedgeMinDelayMs));
+        this.scheduleRequestTimer(req, hedgeDelay, new Message.HedgeTimeout(requestId, item.getKey()));
+      }
+      //With digest reads only one replica returns the value (none if the coordinator has read it), the others the version
+      for (int i = 0; i < contacted; i++) {
+        boolean digest = this.config.digestReads && this.config.writeProtocol != WriteProtocol.VECTOR_CLOCK && (nR > 0 || i > 0);
+        this.sendRead(req, this.peers.get(replicas.get(i)), digest);
+      }
+
       //Set a timeout that will expire if not enough (R) replies arrives
-      getContext().system().scheduler().scheduleOnce(
-              Duration.create(Main.T, TimeUnit.SECONDS),
-              this.getSelf(),
-              new Message.Timeout(clientName, item.getKey()), // the message to send,
-              getContext().system().dispatcher(), this.getSelf()
-      );
+      this.scheduleRequestTimer(req, TimeUnit.SECONDS.toMillis(Main.T), new Message.Timeout(requestId, item.getKey()));
     } else if (nR == this.R){ // this should happen only if R is set to 1
       System.out.println("["+this.getSelf().path().name()+"] [onDirectReadItemInformation] Owner");
-      //Remove the request from the array
-      this.requests.remove(clientName);
-      // model a random network/processing delay
-      try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
-      catch (InterruptedException e) { e.printStackTrace(); }
-      //Return the result of the read operation
-      req.getClient().tell(new ClientMessage.GetResult(Result.SUCCESS, item), ActorRef.noSender());
+      //Remove the request from the array and return the result of the read operation
+      this.completeGet(req);
     }
   }
 
@@ -1045,6 +1560,21 @@ public class Node extends AbstractActor {
   // i. firstly check if a lock is not set (not writing operation ongoing) and if the item is not null (item stored)
   // ii. return the item stored
   private void onRead(Message.Read msg){
+    this.sampler.record(msg.item.getKey());
+    // digest read: return only the version, the value is not even loaded
+    if(msg.digest) {
+      long version = this.items.getVersion(msg.item.getKey());
+      if(this.locks.containsKey(msg.item.getKey()) == false && version >= 0) {
+        System.out.println("[" + this.getSelf().path().name() + "] [onRead] Owner: " + key + " DIGEST: item " + msg.item.getKey() + " version " + version);
+        // model a random network/processing delay
+        try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
+        catch (InterruptedException e) { e.printStackTrace(); }
+        this.send(this.getSender(), new Message.ReadDigest(msg.requestId, msg.item.getKey(), version));
+      } else if(this.locks.containsKey(msg.item.getKey())) {
+        this.send(this.getSender(), new Message.Busy(msg.requestId, msg.item.getKey()));
+      }
+      return;
+    }
     Item item = this.items.get(msg.item.getKey());
     // i. firstly check if a lock is not set (not writing operation ongoing) and if the item is not null (item stored)
     if(this.locks.containsKey(msg.item.getKey()) == false && item != null) {
@@ -1053,7 +1583,11 @@ public class Node extends AbstractActor {
       try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
       catch (InterruptedException e) { e.printStackTrace(); }
       // ii. return the item stored
-      this.getSender().tell(new Message.ReadItemInformation(msg.clientName, item), ActorRef.noSender());
+      this.send(this.getSender(), new Message.ReadItemInformation(msg.requestId, item, this.getSiblings(item.getKey())));
+    } else if(this.locks.containsKey(msg.item.getKey())) {
+      // the item is being written: tell the coordinator, which may no more reach R
+      System.out.println("[" + this.getSelf().path().name() + "] [onRead] Owner: " + key + " BUSY: item " + msg.item.getKey());
+      this.send(this.getSender(), new Message.Busy(msg.requestId, msg.item.getKey()));
     }
   }
 
@@ -1069,13 +1603,24 @@ public class Node extends AbstractActor {
   private void onReadItemInformation(Message.ReadItemInformation msg){
     System.out.println("["+this.getSelf().path().name()+"] [onReadItemInformation] Coordinator: " + msg.item);
 
-    Request req = this.requests.get(msg.clientName);
+    Request req = this.requests.get(msg.requestId);
 
     // i. check if request is set (if the timeout has not expired)
     if(req != null) {
 
       // ii. Increase the number of replies received
-      req.setOperationCounter(req.getOperationCounter() + 1);
+      // (a replica which has already answered with a digest is sending the value of its newer version)
+      if(!req.getReplicaVersions().containsKey(this.getSender())) {
+        req.setOperationCounter(req.getOperationCounter() + 1);
+      }
+      req.getReplicaVersions().put(this.getSender(), msg.item.getVersion());
+      for(Item sibling : msg.siblings) {
+        addSibling(req.getSiblings(), sibling);
+      }
+      Long sentAt = req.getSentAt().get(this.getSender());
+      if(sentAt != null) {
+        this.latencies.record(this.getSender(), (System.nanoTime() - sentAt) / 1_000_000);
+      }
       int nR = req.getOperationCounter();
 
       Item item = req.getItem();
@@ -1086,90 +1631,624 @@ public class Node extends AbstractActor {
         item.setValue(msg.item.getValue());
       }
 
-      // V. check if the quorum R is reached
-      if(nR == this.R) {
+      // V. check if the quorum R is reached (and the value of the newest version announced by a digest is there)
+      if(nR >= this.R && req.getDigestVersion() <= item.getVersion()) {
         // Vi. if it is reached remove the request and return the updated item
-        this.requests.remove(msg.clientName);
-
-        // model a random network/processing delay
-        try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
-        catch (InterruptedException e) { e.printStackTrace(); }
-
-        req.getClient().tell(new ClientMessage.GetResult(Result.SUCCESS, item), ActorRef.noSender());
+        this.completeGet(req);
+      }
+    } else if(this.readRepairs.containsKey(msg.requestId) && this.readRepairs.get(msg.requestId).getItem().getKey() == msg.item.getKey()) {
+      // late reply of a get which has already been answered: it is collected for the read repair
+      Request repair = this.readRepairs.get(msg.requestId);
+      repair.getReplicaVersions().put(this.getSender(), msg.item.getVersion());
+      if(msg.item.getVersion() > repair.getItem().getVersion()){
+        repair.setItemValue(new Item(msg.item));  // the item returned to the client must not be modified
       }
     } else {
       System.out.println("["+this.getSelf().path().name()+"] [onReadItemInformation] Coordinator: " + msg.item + " REQUEST NULL");
     }
   }
 
-  /*----------END GET----------*/
+  // Digest reply of a replica: it counts toward R like a full reply. If it announces a version newer than
+  // the value the coordinator holds, the coordinator asks that replica for the value and the get is
+  // completed only when the value has arrived
+  private void onReadDigest(Message.ReadDigest msg){
+    System.out.println("["+this.getSelf().path().name()+"] [onReadDigest] Coordinator: item " + msg.itemId + " version " + msg.version);
 
-  //Manage the release of the lock; check if the lock is the one that corresponds to the one requested
-  // if the condition is satisfied, remove the lock
-  private void onReleaseLock(Message.ReleaseLock msg){
-    String lock = this.locks.get(msg.itemId);
-    if(lock != null && lock.equals(msg.clientName)){
-      this.locks.remove(msg.itemId);
-    }
-  }
+    Request req = this.requests.get(msg.requestId);
+    if(req != null && req.getType() == Type.GET && req.getItem().getKey() == msg.itemId) {
+      req.setOperationCounter(req.getOperationCounter() + 1);
+      req.getReplicaVersions().put(this.getSender(), msg.version);
+      Long sentAt = req.getSentAt().get(this.getSender());
+      if(sentAt != null) {
+        this.latencies.record(this.getSender(), (System.nanoTime() - sentAt) / 1_000_000);
+      }
 
-  /*----------TIMEOUT----------*/
+      if(msg.version > req.getItem().getVersion() && msg.version > req.getDigestVersion()) {
+        req.setDigestVersion(msg.version);
+        this.sendRead(req, this.getSender(), false);
+      }
 
-  //Manage the timeout for the read and write operation in this way
-  // i. Check if the request is set, if it is set
-  // ii. Check if the operation requested is a read or write
-  // iii. if the operation is a get, simply return the errot get response
-  // iV. if it is a write operation, do:
-  // V. get the list of the responsible nodes
-  // Vi. Check if the coordinator is one of the responsible nodes
-  // Vii. if the coordinator is one of the responsible nodes and the lock corresponds to the one requested, remove it
-  // Viii. Ask to the other nodes to release the requested lock
-  // iX. return the error write operation response
-  private void onTimeout(Message.Timeout msg){
-    // i. Check if the request is set, if it is set
-    if(this.requests.containsKey(msg.clientName) == true){
-      Request req = this.requests.remove(msg.clientName);
-      // ii. Check if the operation requested is a read or write
-      if(req.getType() == Type.GET) {
-        // model a random network/processing delay
-        try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
-        catch (InterruptedException e) { e.printStackTrace(); }
-        System.out.println("["+this.getSelf().path().name()+"] [onTimeout_ReadOperation] ABORT GET REQUEST");
-        // iii. if the operation is a get, simply return the error get response
-        req.getClient().tell(new ClientMessage.GetResult(Result.ERROR, null), ActorRef.noSender());
-      } else {
-        // iV. if it is a write operation, do:
+      if(req.getOperationCounter() >= this.R && req.getDigestVersion() <= req.getItem().getVersion()) {
+        this.completeGet(req);
+      }
+    } else if(this.readRepairs.containsKey(msg.requestId) && this.readRepairs.get(msg.requestId).getItem().getKey() == msg.itemId) {
+      // late digest of a get which has already been answered: it is collected for the read repair
+      this.readRepairs.get(msg.requestId).getReplicaVersions().put(this.getSender(), msg.version);
+    }
+  }
 
-        // V. get the list of the responsible nodes
-        Set<Integer> nodes = getResponsibleNode(msg.itemId);
+  // ask a replica to return its version of the item of a get (only the version if digest is true)
+  private void sendRead(Request req, ActorRef replica, boolean digest){
+    req.getSentAt().put(replica, System.nanoTime());
+    // model a random network/processing delay
+    try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+    this.send(replica, new Message.Read(req.getRequestId(), req.getItem(), digest));
+  }
 
-        // Vi. Check if the coordinator is one of the responsible nodes
-        if(nodes.contains(this.key)){
-          // Vii. if the coordinator is one of the responsible nodes and the lock corresponds to the one requested, remove it
-          String lock = this.locks.get(msg.itemId);
-          if(lock != null && lock.equals(msg.clientName)) {
-            this.locks.remove(msg.itemId);
-          }
+  // The replicas contacted first by a hedged get have not reached the quorum R within the hedge delay
+  // (they are slow, crashed, locked or they do not have the item): contact the other replicas
+  private void onHedgeTimeout(Message.HedgeTimeout msg){
+    Request req = this.requests.get(msg.requestId);
+    if(req == null || req.getType() != Type.GET || req.getItem().getKey() != msg.itemId) {
+      return;
+    }
+    for (int node : this.routingTable.getPreferenceList(msg.itemId)) {
+      if (node != this.key && !req.getSentAt().containsKey(this.peers.get(node))) {
+        System.out.println("["+this.getSelf().path().name()+"] [onHedgeTimeout] Coordinator: hedged read to node " + node + " item " + msg.itemId);
+        this.hedgedReads++;
+        this.sendRead(req, this.peers.get(node), false);
+      }
+    }
+  }
+
+  // The quorum R of a get has been reached: remove the request, return the item to the client and
+  // repair the replicas which have answered with an older version (see ReadRepair).
+  // With SYNC the client is answered when the repaired replicas have acked or the repair deadline expires
+  private void completeGet(Request req){
+    this.removeRequest(req.getRequestId());
+
+    if(this.config.readRepair == ReadRepair.SYNC){
+      this.repairReplicas(req, false, true);
+      if(!req.getPendingRepairs().isEmpty()){
+        this.syncRepairs.put(req.getRequestId(), req);
+        long deadline = this.config.readRepairWindowMs > 0 ? this.config.readRepairWindowMs : TimeUnit.SECONDS.toMillis(Main.T);
+        this.scheduleRequestTimer(req, deadline, new Message.ReadRepairTimeout(req.getRequestId(), req.getItem().getKey()));
+        return;
+      }
+    }
+    this.answerGet(req);
+  }
+
+  // return the item of a completed get to the client and start the asynchronous read repair
+  private void answerGet(Request req){
+    // model a random network/processing delay
+    try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    // with more than one concurrent version the client receives all of them and reconciles them. The clock
+    // of the returned item is the context of the next update of the client: it descends from all the versions read
+    if(!req.getSiblings().isEmpty()){
+      VectorClock context = new VectorClock();
+      for(Item sibling : req.getSiblings()){
+        context = context.merge(sibling.getClock());
+      }
+      req.getItem().setClock(context);
+    }
+    List<Item> result = req.getSiblings().size() > 1 ? Collections.unmodifiableList(new ArrayList<>(req.getSiblings())) : Collections.emptyList();
+    this.replyGet(req, new ClientMessage.GetResult(Result.SUCCESS, req.getItem(), result, req.getClientRequestId()));
+
+    if(this.config.readRepair != ReadRepair.NONE && this.config.writeProtocol != WriteProtocol.VECTOR_CLOCK){
+      if(this.config.readRepairWindowMs > 0){
+        // collect the late replies, they are repaired at the end of the window
+        this.readRepairs.put(req.getRequestId(), req);
+        getContext().system().scheduler().scheduleOnce(
+                Duration.create(this.config.readRepairWindowMs, TimeUnit.MILLISECONDS),
+                this.getSelf(),
+                new Message.ReadRepairWindow(req.getRequestId(), req.getItem().getKey()), // the message to send,
+                getContext().system().dispatcher(), this.getSelf()
+        );
+      } else if(this.config.readRepair == ReadRepair.ASYNC){
+        this.repairReplicas(req, false, false);
+      }
+    }
+  }
+
+  // A repaired replica has acked: the get is answered when all of them have
+  private void onReadRepairAck(Message.ReadRepairAck msg){
+    Request req = this.syncRepairs.get(msg.requestId);
+    if(req != null && req.getItem().getKey() == msg.itemId){
+      req.getPendingRepairs().remove(this.getSender());
+      if(req.getPendingRepairs().isEmpty()){
+        this.finishSyncRepair(req);
+      }
+    }
+  }
+
+  // Some repaired replicas have not acked in time (crashed or slow): the get is answered anyway, the
+  // quorum R has been reached
+  private void onReadRepairTimeout(Message.ReadRepairTimeout msg){
+    Request req = this.syncRepairs.get(msg.requestId);
+    if(req != null && req.getItem().getKey() == msg.itemId){
+      System.out.println("["+this.getSelf().path().name()+"] [onReadRepairTimeout] Coordinator: item " + msg.itemId + " " + req.getPendingRepairs().size() + " repairs not acked");
+      this.finishSyncRepair(req);
+    }
+  }
+
+  private void finishSyncRepair(Request req){
+    this.syncRepairs.remove(req.getRequestId());
+    this.requestTimersCancelled += req.cancelTimers();
+    this.answerGet(req);
+  }
+
+  // send the newest version of the item of a get to the replicas which have returned an older one and, if
+  // repairSilent is true, to the replicas which have not answered (they may not have the item at all).
+  // A repair is applied by the replica only if its own version is older, so it never overwrites a newer write.
+  // With ack the replicas ack the repair and they are added to the pending repairs of the request
+  private void repairReplicas(Request req, boolean repairSilent, boolean ack){
+    Item item = req.getItem();
+    for(int node : this.routingTable.getPreferenceList(item.getKey())){
+      ActorRef replica = node == this.key ? this.getSelf() : this.peers.get(node);
+      Long version = req.getReplicaVersions().get(replica);
+      if((version == null && !repairSilent) || (version != null && version >= item.getVersion())){
+        continue;
+      }
+      req.getReplicaVersions().put(replica, item.getVersion());
+      this.readRepairsIssued++;
+      System.out.println("["+this.getSelf().path().name()+"] [repairReplicas] Coordinator: repair of node " + node + " ITEM: " + item);
+      if(node == this.key){
+        this.applyReadRepair(item);
+      } else {
+        replica.tell(new Message.ReadRepairWrite(req.getRequestId(), new Item(item), ack), this.getSelf());
+        if(ack){
+          req.getPendingRepairs().add(replica);
         }
+      }
+    }
+  }
 
-        // Viii. Ask to the other nodes to release the requested lock
-        for (int node : nodes) {
-          if (node != this.key) {
-            // model a random network/processing delay
-            try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
-            catch (InterruptedException e) { e.printStackTrace(); }
+  // The window of the late replies of a get is over: repair the replicas which are still stale
+  private void onReadRepairWindow(Message.ReadRepairWindow msg){
+    Request repair = this.readRepairs.get(msg.requestId);
+    if(repair != null && repair.getItem().getKey() == msg.itemId){
+      this.readRepairs.remove(msg.requestId);
+      this.repairReplicas(repair, true, false);
+    }
+  }
 
-            (peers.get(node)).tell(new Message.ReleaseLock(msg.clientName, msg.itemId), this.getSelf());
-          }
+  private void onReadRepairWrite(Message.ReadRepairWrite msg){
+    this.applyReadRepair(msg.item);
+    if(msg.ack){
+      this.getSender().tell(new Message.ReadRepairAck(msg.requestId, msg.item.getKey()), this.getSelf());
+    }
+  }
+
+  // store the repaired item if it is newer than the local copy and no write of the item is ongoing
+  private void applyReadRepair(Item item){
+    if(this.locks.containsKey(item.getKey()) || !this.routingTable.isResponsible(this.key, item.getKey())){
+      return;
+    }
+    if(this.items.getVersion(item.getKey()) < item.getVersion()){
+      this.storeItem(new Item(item));
+      this.readRepairsApplied++;
+      System.out.println("["+this.getSelf().path().name()+"] [onReadRepairWrite] Owner: " + key + " ITEM: " + item);
+    }
+  }
+
+  /*----------END GET----------*/
+
+  /*----------SCAN----------*/
+
+  //The client asks for the items in a range of keys:
+  // i. compute the tokens of the range: with RAW the token of a key is the key itself, with MURMUR3 the keys of the
+  //    range can be anywhere on the ring and the whole ring is read, then merged in key order (see ScanCursor)
+  // ii. split the tokens in parts with the same preference list
+  // iii. read the parts one at a time and send the items to the client in pages, as it grants credits (see ScanCursor)
+  private void onScanRequest(Message.ScanRequest msg){
+    long scanId = this.nextRequestId();
+    System.out.println("["+msg.clientName+"] [onScan] Coordinator: keys " + msg.fromKey + ".." + msg.toKey + " limit " + msg.limit);
+
+    // i. tokens of the range
+    long low = this.config.partitioner == Partitioner.RAW ? msg.fromKey : this.config.partitioner.minToken();
+    long high = this.config.partitioner == Partitioner.RAW ? msg.toKey : this.config.partitioner.maxToken();
+    if(msg.fromKey > msg.toKey || msg.limit <= 0 || this.routingTable.size() == 0){
+      this.getSender().tell(new ClientMessage.ScanPage(Result.SUCCESS, Collections.emptyList(), true, scanId, msg.requestId), this.getSelf());
+      return;
+    }
+
+    // ii. parts of the range
+    long[] parts = this.routingTable.splitRange(low, high);
+    ScanCursor scan = new ScanCursor(this.getSender(), msg.requestId, msg.fromKey, msg.toKey, parts, msg.limit, Math.max(msg.credits, 1), this.config.partitioner == Partitioner.RAW);
+    this.scans.put(scanId, scan);
+
+    // iii. start reading
+    this.advanceScan(scanId, scan);
+  }
+
+  //Move a scan forward:
+  // i. send the pages the client has credits for; the last page is sent when no more items will be read
+  // ii. if the buffer cannot fill the next page, read the next part from R of its replicas (the coordinator first, if it is one of them)
+  // iii. set the timeout of the step
+  private void advanceScan(long scanId, ScanCursor scan){
+    // i. send the pages
+    while(scan.getCredits() > 0 && (scan.getBuffer().size() >= SCAN_PAGE_SIZE || scan.isExhausted())){
+      List<Item> page = new ArrayList<>();
+      while(page.size() < SCAN_PAGE_SIZE && !scan.getBuffer().isEmpty()){
+        page.add(scan.getBuffer().poll());
+      }
+      boolean last = scan.isExhausted() && scan.getBuffer().isEmpty();
+      scan.setCredits(scan.getCredits() - 1);
+
+      // model a random network/processing delay
+      try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
+      catch (InterruptedException e) { e.printStackTrace(); }
+
+      scan.getClient().tell(new ClientMessage.ScanPage(Result.SUCCESS, Collections.unmodifiableList(page), last, scanId, scan.getClientRequestId()), this.getSelf());
+      if(last){
+        this.scans.remove(scanId);
+        scan.setTimer(null);
+        return;
+      }
+    }
+
+    // ii. read the next part
+    if(!scan.isReadingPart() && !scan.isExhausted() && scan.getBuffer().size() < SCAN_PAGE_SIZE){
+      long partLow = scan.partLow(scan.getNextPart());
+      int[] respNodes = this.routingTable.getPreferenceListOfToken(partLow);
+      List<Integer> replicas = new ArrayList<>();
+      if(RoutingTable.contains(respNodes, this.key)){
+        replicas.add(this.key);
+      }
+      for(int node : respNodes){
+        if(node != this.key && replicas.size() < this.R){
+          replicas.add(node);
         }
+      }
+      int part = scan.startPart(replicas.size());
+      for(int node : replicas){
+        ActorRef replica = node == this.key ? this.getSelf() : this.peers.get(node);
+        replica.tell(new Message.ScanRead(scanId, part, partLow, scan.partHigh(part), scan.getFromKey(), scan.getToKey(), scan.getRemaining()), this.getSelf());
+      }
+    }
+
+    // iii. timeout of the step: the replicas have not answered, or the client has not granted a credit
+    scan.setTimer(getContext().system().scheduler().scheduleOnce(
+            Duration.create(Main.T, TimeUnit.SECONDS),
+            this.getSelf(),
+            new Message.ScanTimeout(scanId, scan.nextStep()), // the message to send,
+            getContext().system().dispatcher(), this.getSelf()
+    ));
+  }
+
+  //A replica returns its items of a part of a scan, in key order
+  private void onScanRead(Message.ScanRead msg){
+    int[] keys = this.items.keysInTokenRange(msg.lowToken, msg.highToken);
+    int count = 0;
+    for(int k : keys){
+      if(k >= msg.fromKey && k <= msg.toKey){
+        keys[count++] = k;
+      }
+    }
+    keys = Arrays.copyOf(keys, count);
+    Arrays.sort(keys);
+
+    List<Item> itemList = new ArrayList<>();
+    for(int i = 0; i < keys.length && i < msg.max; i++){
+      itemList.add(new Item(this.items.get(keys[i])));
+    }
+    System.out.println("[" + this.getSelf().path().name() + "] [onScanRead] Owner: " + key + " part " + msg.part + ": " + itemList.size() + " items");
+
+    // model a random network/processing delay
+    try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    this.getSender().tell(new Message.ScanItems(msg.scanId, msg.part, Collections.unmodifiableList(itemList)), this.getSelf());
+  }
+
+  //The coordinator merges the items of the replicas: when R replicas have answered, the newest versions enter the buffer
+  private void onScanItems(Message.ScanItems msg){
+    ScanCursor scan = this.scans.get(msg.scanId);
+    if(scan == null || !scan.isReadingPart() || msg.part != scan.getNextPart() - 1){
+      return;   // late answer
+    }
+    if(scan.addReplies(msg.items)){
+      scan.completePart();
+      this.advanceScan(msg.scanId, scan);
+    }
+  }
+
+  //The client is ready for another page
+  private void onScanCredit(Message.ScanCredit msg){
+    ScanCursor scan = this.scans.get(msg.scanId);
+    if(scan != null){
+      scan.setCredits(scan.getCredits() + 1);
+      this.advanceScan(msg.scanId, scan);
+    }
+  }
+
+  //The current step of the scan has not completed in time: abort the scan
+  private void onScanTimeout(Message.ScanTimeout msg){
+    ScanCursor scan = this.scans.get(msg.scanId);
+    if(scan == null || scan.getStep() != msg.step){
+      return;
+    }
+    this.scans.remove(msg.scanId);
+    System.out.println("["+this.getSelf().path().name()+"] [onScanTimeout] ABORT SCAN");
+    scan.getClient().tell(new ClientMessage.ScanPage(Result.ERROR, Collections.emptyList(), true, msg.scanId, scan.getClientRequestId()), this.getSelf());
+  }
+
+  /*----------END SCAN----------*/
+
+  //Manage the release of the lock; check if the lock is the one that corresponds to the one requested
+  // if the condition is satisfied, remove the lock
+  private void onReleaseLock(Message.ReleaseLock msg){
+    Long lock = this.locks.get(msg.itemId);
+    if(lock != null && lock == msg.requestId){
+      this.locks.remove(msg.itemId);
+    }
+  }
+
+  /*----------BATCH----------*/
+
+  // send a message to a node; while the node is batching (multi get, multi update, Batch) the message is
+  // kept in the outbox and sent with the other messages for the same node
+  private void send(ActorRef destination, Serializable msg){
+    if(this.outbox != null){
+      this.outbox.computeIfAbsent(destination, k -> new ArrayList<>()).add(msg);
+    } else {
+      destination.tell(msg, this.getSelf());
+    }
+  }
+
+  // send the messages of the outbox, a single Batch for every node, and stop batching
+  private void flushOutbox(){
+    Map<ActorRef, List<Serializable>> messages = this.outbox;
+    this.outbox = null;
+    for(Map.Entry<ActorRef, List<Serializable>> entry : messages.entrySet()){
+      if(entry.getValue().size() == 1){
+        entry.getKey().tell(entry.getValue().get(0), this.getSelf());
+      } else {
+        entry.getKey().tell(new Message.Batch(Collections.unmodifiableList(entry.getValue())), this.getSelf());
+      }
+    }
+  }
+
+  // handle the messages of a batch in order; the answers for the sender are batched too
+  private void onBatch(Message.Batch msg){
+    this.outbox = new HashMap<>();
+    try {
+      for(Serializable m : msg.messages){
+        if(m instanceof Message.Read){
+          this.onRead((Message.Read) m);
+        } else if(m instanceof Message.ReadItemInformation){
+          this.onReadItemInformation((Message.ReadItemInformation) m);
+        } else if(m instanceof Message.ReadDigest){
+          this.onReadDigest((Message.ReadDigest) m);
+        } else if(m instanceof Message.Version){
+          this.onVersion((Message.Version) m);
+        } else if(m instanceof Message.UpdateVersion){
+          this.onUpdateVersion((Message.UpdateVersion) m);
+        } else if(m instanceof Message.DirectWrite){
+          this.onDirectWrite((Message.DirectWrite) m);
+        } else if(m instanceof Message.WriteAck){
+          this.onWriteAck((Message.WriteAck) m);
+        } else if(m instanceof Message.Busy){
+          this.onBusy((Message.Busy) m);
+        } else if(m instanceof Message.Locked){
+          this.onLocked((Message.Locked) m);
+        } else {
+          this.getSelf().tell(m, this.getSender());
+        }
+      }
+    } finally {
+      this.flushOutbox();
+    }
+  }
+
+  // return the result of a get to the client or, if the get is part of a multi get, add it to the batch;
+  // the client receives the results of a multi get when the last key has completed
+  private void replyGet(Request req, ClientMessage.GetResult result){
+    BatchRequest batch = req.getBatch();
+    if(batch == null){
+      req.getClient().tell(result, ActorRef.noSender());
+    } else if(batch.addGetResult(req.getItem().getKey(), result)){
+      batch.getClient().tell(new ClientMessage.MultiGetResult(Collections.unmodifiableMap(batch.getGetResults()), batch.getClientRequestId()), ActorRef.noSender());
+    }
+  }
+
+  // the updates coalesced with the request get the same result
+  private void replyUpdate(Request req, ClientMessage.UpdateResult result){
+    this.replyUpdate(req.getClient(), req.getBatch(), req.getItem().getKey(), result);
+    for(Request coalesced : req.getCoalesced()){
+      this.replyUpdate(coalesced.getClient(), coalesced.getBatch(), coalesced.getItem().getKey(), new ClientMessage.UpdateResult(result.result, result.item, coalesced.getClientRequestId()));
+    }
+  }
+
+  private void replyUpdate(ActorRef client, BatchRequest batch, int itemKey, ClientMessage.UpdateResult result){
+    if(batch == null){
+      client.tell(result, ActorRef.noSender());
+    } else if(batch.addUpdateResult(itemKey, result)){
+      batch.getClient().tell(new ClientMessage.MultiUpdateResult(Collections.unmodifiableMap(batch.getUpdateResults()), batch.getClientRequestId()), ActorRef.noSender());
+    }
+  }
+
+  /*----------END BATCH----------*/
+
+  /*----------REFUSALS----------*/
+
+  // A replica cannot serve a read of a get because the item is locked
+  private void onBusy(Message.Busy msg){
+    this.onRefusal(msg.requestId, msg.itemId, Type.GET);
+  }
+
+  // A replica cannot grant the lock of an item to an update because another update holds it
+  private void onLocked(Message.Locked msg){
+    this.onRefusal(msg.requestId, msg.itemId, Type.UPDATE);
+  }
+
+  private void onRefusal(long requestId, int itemId, Type type){
+    Request req = this.requests.get(requestId);
+    if(req == null || req.getType() != type || req.getItem().getKey() != itemId){
+      return;   // the request has already completed
+    }
+    if(req.getResponders().contains(this.getSender()) || req.getReplicaVersions().containsKey(this.getSender())){
+      return;   // the replica has already answered, e.g. with a digest
+    }
+    this.refusalsReceived++;
+    System.out.println("["+this.getSelf().path().name()+"] [onRefusal] Coordinator: " + type + " item " + itemId + " refused by " + this.getSender().path().name());
+    req.getRefusals().add(this.getSender());
+    if(type == Type.UPDATE){
+      this.revokeStandIn(req, this.getSender());
+    }
+    this.abortIfUnreachable(req);
+  }
+
+  // Abort a request which can no more reach its quorum, since too many replicas have refused it, without
+  // waiting for the timeout: the client gets the error right away and the locks already held are released.
+  // Return true if the request has been aborted
+  private boolean abortIfUnreachable(Request req){
+    int quorum = req.getType() == Type.GET ? this.R : this.W;
+    int replicas = this.routingTable.getPreferenceList(req.getItem().getKey()).length;
+    if(replicas - req.getRefusals().size() >= quorum){
+      return false;
+    }
+    this.refusalAborts++;
+    this.removeRequest(req.getRequestId());
+    System.out.println("["+this.getSelf().path().name()+"] [abortIfUnreachable] ABORT " + req.getType() + " REQUEST: item " + req.getItem().getKey() + " is locked");
+    if(req.getType() == Type.GET){
+      this.replyGet(req, new ClientMessage.GetResult(Result.ERROR, null, req.getClientRequestId()));
+    } else {
+      this.releaseUpdateLocks(req);
+      this.replyUpdate(req, new ClientMessage.UpdateResult(Result.ERROR, null, req.getClientRequestId()));
+    }
+    return true;
+  }
+
+  /*----------END REFUSALS----------*/
+
+  /*----------TIMEOUT----------*/
+
+  // schedule a message of the request to the node itself; the message is cancelled when the request is removed
+  private void scheduleRequestTimer(Request req, long delayMs, Object msg){
+    req.addTimer(getContext().system().scheduler().scheduleOnce(
+            Duration.create(delayMs, TimeUnit.MILLISECONDS),
+            this.getSelf(),
+            msg,                                        // the message to send,
+            getContext().system().dispatcher(), this.getSelf()
+    ));
+    this.requestTimersScheduled++;
+  }
+
+  // new request id, unique in the ring: the key of the node followed by the number of the requests it has coordinated
+  private long nextRequestId(){
+    return ((long) this.key << 32) | (this.requestCounter++ & 0xFFFFFFFFL);
+  }
+
+  // remove a request which has completed (or expired) and cancel its pending messages
+  private Request removeRequest(long requestId){
+    Request req = this.requests.remove(requestId);
+    if(req != null){
+      this.requestTimersCancelled += req.cancelTimers();
+
+      // the next update of the item can start
+      Deque<Request> queue = this.writeQueues.get(req.getItem().getKey());
+      if(req.getType() == Type.UPDATE && queue != null && queue.peek() == req){
+        queue.poll();
+        if(queue.isEmpty()){
+          this.writeQueues.remove(req.getItem().getKey());
+        } else {
+          this.getSelf().tell(new Message.NextWrite(req.getItem().getKey()), this.getSelf());
+        }
+      }
+    }
+    return req;
+  }
+
+  //Manage the timeout for the read and write operation in this way
+  // i. Check if the request is set, if it is set
+  // ii. Check if the operation requested is a read or write
+  // iii. if the operation is a get, simply return the errot get response
+  // iV. if it is a write operation, do:
+  // V. get the list of the responsible nodes
+  // Vi. Check if the coordinator is one of the responsible nodes
+  // Vii. if the coordinator is one of the responsible nodes and the lock corresponds to the one requested, remove it
+  // Viii. Ask to the other nodes to release the requested lock
+  // iX. return the error write operation response
+  private void onTimeout(Message.Timeout msg){
+    // i. Check if the request is set, if it is set
+    if(this.requests.containsKey(msg.requestId) == true){
+      Request req = this.removeRequest(msg.requestId);
+      // ii. Check if the operation requested is a read or write
+      if(req.getType() == Type.GET) {
+        // model a random network/processing delay
+        try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
+        catch (InterruptedException e) { e.printStackTrace(); }
+        System.out.println("["+this.getSelf().path().name()+"] [onTimeout_ReadOperation] ABORT GET REQUEST");
+        // iii. if the operation is a get, simply return the error get response
+        this.replyGet(req, new ClientMessage.GetResult(Result.ERROR, null, req.getClientRequestId()));
+      } else {
+        // iV. if it is a write operation, do:
+        // V..Viii. release the locks of the update
+        this.releaseUpdateLocks(req);
 
         // model a random network/processing delay
         try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
         catch (InterruptedException e) { e.printStackTrace(); }
         System.out.println("["+this.getSelf().path().name()+"] [onTimeout_WriteOperation] ABORT UPDATE REQUEST");
         // iX. return the error write operation response
-        req.getClient().tell(new ClientMessage.UpdateResult(Result.ERROR, null), ActorRef.noSender());
+        this.replyUpdate(req, new ClientMessage.UpdateResult(Result.ERROR, null, req.getClientRequestId()));
       }
+    } else if(this.writeQueues.containsKey(msg.itemId)){
+      // an update still waiting in the queue of the item: it has taken no lock
+      Deque<Request> queue = this.writeQueues.get(msg.itemId);
+      for(Request req : queue){
+        if(req.getRequestId() == msg.requestId){
+          queue.remove(req);
+          if(queue.isEmpty()){
+            this.writeQueues.remove(msg.itemId);
+          }
+          this.requestTimersCancelled += req.cancelTimers();
+          System.out.println("["+this.getSelf().path().name()+"] [onTimeout_WriteOperation] ABORT QUEUED UPDATE REQUEST");
+          this.replyUpdate(req, new ClientMessage.UpdateResult(Result.ERROR, null, req.getClientRequestId()));
+          break;
+        }
+      }
+    }
+  }
+
+  //Release the locks taken by an update which is aborted
+  // V. get the list of the responsible nodes
+  // Vi. Check if the coordinator is one of the responsible nodes
+  // Vii. if the coordinator is one of the responsible nodes and the lock corresponds to the one requested, remove it
+  // Viii. Ask to the other nodes to release the requested lock
+  private void releaseUpdateLocks(Request req){
+    long requestId = req.getRequestId();
+    int itemId = req.getItem().getKey();
+
+    // V. get the list of the responsible nodes
+    int[] nodes = this.routingTable.getPreferenceList(itemId);
+
+    // Vi. Check if the coordinator is one of the responsible nodes
+    if(RoutingTable.contains(nodes, this.key)){
+      // Vii. if the coordinator is one of the responsible nodes and the lock corresponds to the one requested, remove it
+      Long lock = this.locks.get(itemId);
+      if(lock != null && lock == requestId) {
+        this.locks.remove(itemId);
+      }
+    }
+
+    // Viii. Ask to the other nodes to release the requested lock
+    for (int node : nodes) {
+      if (node != this.key) {
+        // model a random network/processing delay
+        try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
+        catch (InterruptedException e) { e.printStackTrace(); }
+
+        (peers.get(node)).tell(new Message.ReleaseLock(requestId, itemId), this.getSelf());
+      }
+    }
+    for (ActorRef hinted : req.getHintedNodes().keySet()) {
+      hinted.tell(new Message.ReleaseLock(requestId, itemId), this.getSelf());
     }
   }
 
@@ -1196,42 +2275,125 @@ public class Node extends AbstractActor {
   // Vii. if the quorum W is not reached, requested to the other responsible nodes
   // Viii. If the quorum W is reached: increase the version, release the lock, remove the request, send the confirmation to the client and write the item
   private void onUpdateRequest(Message.UpdateRequest msg){
-    Item item = new Item(msg.item);
-    String clientName = msg.clientName;
+    this.startUpdate(msg.clientName, msg.requestId, msg.item, msg.expectedVersion, null);
+  }
+
+  // update of several items: the messages of all the items are sent together to every replica (see Message.Batch).
+  // With QUORUM_LOCK this holds for the version round; the writes follow when the quorum of each item is reached
+  private void onMultiUpdateRequest(Message.MultiUpdateRequest msg){
+    Map<Integer, Item> requested = new LinkedHashMap<>();
+    for(Item item : msg.items){
+      requested.put(item.getKey(), item);     // the last update of a key wins
+    }
+    System.out.println("["+msg.clientName+"] [onMultiUpdate] Coordinator: " + requested.size() + " items");
+    if(requested.isEmpty()){
+      this.getSender().tell(new ClientMessage.MultiUpdateResult(Collections.emptyMap(), msg.requestId), ActorRef.noSender());
+      return;
+    }
+    BatchRequest batch = new BatchRequest(this.getSender(), msg.requestId, requested.size());
+    this.outbox = new HashMap<>();
+    try {
+      for(Item item : requested.values()){
+        this.startUpdate(msg.clientName, msg.requestId, item, null, batch);
+      }
+    } finally {
+      this.flushOutbox();
+    }
+  }
+
+  private void startUpdate(String clientName, long clientRequestId, Item requested, Long expectedVersion, BatchRequest batch){
+    Item item = new Item(requested);
     System.out.println("["+this.getSelf().path().name()+"] [onUpdate] Coordinator");
 
     // Write ABORTED since no enough nodes are there in the ring
     if(this.peers.size() < this.N){
       System.out.println("["+this.getSelf().path().name()+"] [onUpdate] ABORTED since no enough nodes are there in the ring");
-      this.getSender().tell(new ClientMessage.UpdateResult(Result.ERROR, null), ActorRef.noSender());
+      this.replyUpdate(this.getSender(), batch, item.getKey(), new ClientMessage.UpdateResult(Result.ERROR, null, clientRequestId));
+      return;
+    }
+
+    // a conditional update is checked against the versions read by the lock round, which only QUORUM_LOCK has
+    if(expectedVersion != null && this.config.writeProtocol != WriteProtocol.QUORUM_LOCK){
+      System.out.println("["+this.getSelf().path().name()+"] [onUpdate] ABORTED since conditional updates need the QUORUM_LOCK write protocol");
+      this.replyUpdate(this.getSender(), batch, item.getKey(), new ClientMessage.UpdateResult(Result.ERROR, null, clientRequestId));
       return;
     }
 
-    String lock = this.locks.get(item.getKey());
+    long requestId = this.nextRequestId();
+    Request req = new Request(this.getSender(), item, Type.UPDATE, clientName, requestId, clientRequestId);
+    req.setBatch(batch);
+    req.setExpectedVersion(expectedVersion);
+    if(expectedVersion != null){
+      item.setVersion(0);   // only the versions of the replicas count, not the one sent by the client
+    }
+    if(this.config.writeProtocol != WriteProtocol.QUORUM_LOCK){
+      this.updateDirect(req);
+      return;
+    }
+
+    // the updates of an item run one at a time: if another one is in progress, wait in the queue of the item.
+    // An unconditional update replaces the value of the last queued one, if it is unconditional too: the two
+    // writes would be applied one after the other, so the first value would never be read
+    Deque<Request> queue = this.writeQueues.computeIfAbsent(item.getKey(), k -> new ArrayDeque<>());
+    if(queue.size() > 1 && queue.peekLast().getExpectedVersion() == null && expectedVersion == null){
+      Request last = queue.peekLast();
+      last.setItemValue(item);
+      last.getCoalesced().add(req);
+      this.coalescedWrites++;
+      System.out.println("["+this.getSelf().path().name()+"] [onUpdate] Coordinator: item " + item.getKey() + " coalesced with a queued update");
+      return;
+    }
+
+    //Set a timeout that will expire if the update has not completed in time, queue included
+    this.scheduleRequestTimer(req, TimeUnit.SECONDS.toMillis(Main.T), new Message.Timeout(requestId, item.getKey()));
+    queue.add(req);
+    if(queue.size() > 1){
+      System.out.println("["+this.getSelf().path().name()+"] [onUpdate] Coordinator: item " + item.getKey() + " queued, " + (queue.size() - 1) + " updates before it");
+      return;
+    }
+    this.runUpdate(req);
+  }
+
+  // The next update of an item: the one before has completed
+  private void onNextWrite(Message.NextWrite msg){
+    Deque<Request> queue = this.writeQueues.get(msg.itemId);
+    if(queue != null && !queue.isEmpty() && !this.requests.containsKey(queue.peek().getRequestId())){
+      this.runUpdate(queue.peek());
+    }
+  }
+
+  // Quorum round of an update with the QUORUM_LOCK protocol
+  private void runUpdate(Request req){
+    Item item = req.getItem();
+    long requestId = req.getRequestId();
+    String clientName = req.getClientName();
 
     // i. Set the new request
-    Request req = new Request(this.getSender(), item, Type.UPDATE, clientName);
-    this.requests.put(clientName, req);
+    this.requests.put(requestId, req);
 
     // ii. get the responsible nodes for the item
-    Set<Integer> respNodes = getResponsibleNode(item.getKey());
+    int[] respNodes = this.routingTable.getPreferenceList(item.getKey());
 
     // iii. check if the coordinator is responsible for the item
-    if (respNodes.contains(this.key)) {
+    if (RoutingTable.contains(respNodes, this.key)) {
       // iV. check if no lock is set
       if(this.locks.containsKey(item.getKey()) == false) {
         // V. if the coordinator is responsible, get the lock, update the number of writing response and if the item is not null update the version
         // Set the lock
-        this.locks.put(item.getKey(), msg.clientName);
-        System.out.println("[" + this.getSelf().path().name() + "] [onUpdate] Coordinator 1 item " + item.getKey() + " lock-client: " + clientName);
+        this.locks.put(item.getKey(), requestId);
+        System.out.println("[" + this.getSelf().path().name() + "] [onUpdate] Coordinator 1 item " + item.getKey() + " lock-client: " + clientName + " request: " + requestId);
         //Increase the responses relative to the update request
         req.setOperationCounter(req.getOperationCounter() + 1);
 
         //Check if the item is already stored in the node
-        if (this.items.get(item.getKey()) != null) {
+        this.sampler.record(item.getKey());
+        long storedVersion = this.items.getVersion(item.getKey());
+        if (storedVersion >= 0) {
           //Update the version of the item with the one owned by the coordinator
-          item.setVersion((this.items.get(item.getKey())).getVersion());
+          item.setVersion(storedVersion);
         }
+      } else {
+        req.getRefusals().add(this.getSelf());
       }
     }
 
@@ -1239,7 +2401,9 @@ public class Node extends AbstractActor {
     int nW = req.getOperationCounter();
 
     // Vi. check if the W quorum is reached
-    if (nW < this.W) {
+    if (nW < this.W && this.abortIfUnreachable(req)) {
+      return;
+    } else if (nW < this.W) {
       // Vii. if the quorum W is not reached, requested to the other responsible nodes
       for (int node : respNodes) {
         //Avoid to sent a useless message to itself
@@ -1248,36 +2412,38 @@ public class Node extends AbstractActor {
           try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
           catch (InterruptedException e) { e.printStackTrace(); }
 
-          (peers.get(node)).tell(new Message.Version(clientName, item), this.getSelf());
+          this.send(peers.get(node), new Message.Version(requestId, item));
         }
       }
 
-      //Set a timeout that will expires if not enough W replies arrives in time
-      getContext().system().scheduler().scheduleOnce(
-              Duration.create(Main.T, TimeUnit.SECONDS),
-              this.getSelf(),
-              new Message.Timeout(clientName, item.getKey()), // the message to send,
-              getContext().system().dispatcher(), this.getSelf()
-      );
+      //Sloppy quorum: if the replicas do not answer quickly, the next nodes of the ring will stand in for them
+      if(this.config.sloppyQuorumTimeoutMs > 0) {
+        this.scheduleRequestTimer(req, this.config.sloppyQuorumTimeoutMs, new Message.HintTimeout(requestId, item.getKey()));
+      }
+      //The timeout of the update has been set when it arrived (startUpdate)
     } else if (nW == this.W) { // this should be only if W is 1
       // Viii. If the quorum W is reached: increase the version, release the lock, remove the request, send the confirmation to the client and write the item
+      if(this.isConflict(req, item.getVersion())) {
+        return;
+      }
       //Update the version to a new one
       item.setVersion(item.getVersion() + 1);
       //Check if the lock is the same you request
-      if(lock != null && lock.equals(clientName)) {
+      Long lock = this.locks.get(item.getKey());
+      if(lock != null && lock == requestId) {
         //release the lock
         this.locks.remove(item.getKey());
       }
       //Remove the requests since it is satisfied (otherwise the timeout will expire
-      this.requests.remove(clientName);
+      this.removeRequest(requestId);
       // model a random network/processing delay
       try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
       catch (InterruptedException e) { e.printStackTrace(); }
       //Send the result of the operation to the client
-      req.getClient().tell(new ClientMessage.UpdateResult(Result.SUCCESS, item), ActorRef.noSender());
+      this.replyUpdate(req, new ClientMessage.UpdateResult(Result.SUCCESS, item, req.getClientRequestId()));
       //Update the result
-      this.items.put(item.getKey(), item);
-      System.out.println("[" + this.getSelf().path().name() + "] [onDirectWriteInformation] Owner: lock: item " + item.getKey() +  " -> lock by " + lock + " -> me " + clientName);
+      this.storeItem(item);
+      System.out.println("[" + this.getSelf().path().name() + "] [onDirectWriteInformation] Owner: lock: item " + item.getKey() +  " -> lock by " + lock + " -> me " + requestId);
     }
 
   }
@@ -1291,17 +2457,18 @@ public class Node extends AbstractActor {
   // iV. return the item with the actual version stored
   private void onVersion(Message.Version msg){
     Item item = new Item(msg.item);
+    this.sampler.record(item.getKey());
 
     // i. check if no lock (or same lock) is set (if the condition is not matched no response)
     if(this.locks.containsKey(item.getKey()) == false) {
-      System.out.println("[" + this.getSelf().path().name() + "] [onVersion] Owner lock: item key " + item.getKey() +  " -> lock by " + msg.clientName + "  (on node): -> " + this.key);
-      Item itemNode = this.items.get(item.getKey());
+      System.out.println("[" + this.getSelf().path().name() + "] [onVersion] Owner lock: item key " + item.getKey() +  " -> lock by " + msg.requestId + "  (on node): -> " + this.key);
+      long storedVersion = msg.hintFor == null ? this.items.getVersion(item.getKey()) : this.getHintVersion(msg.hintFor, item.getKey());
       // ii. get the lock
-      this.locks.put(item.key, msg.clientName);
+      this.locks.put(item.key, msg.requestId);
 
       // iii. check if item is not null and if so get the version of the item stored
-      if (itemNode != null) {
-        item.setVersion(itemNode.getVersion());
+      if (storedVersion >= 0) {
+        item.setVersion(storedVersion);
       }
 
       // model a random network/processing delay
@@ -1309,10 +2476,11 @@ public class Node extends AbstractActor {
       catch (InterruptedException e) { e.printStackTrace(); }
 
       // iV. return the item with the actual version stored
-      this.getSender().tell(new Message.UpdateVersion(msg.clientName, item), this.getSelf());
+      this.send(this.getSender(), new Message.UpdateVersion(msg.requestId, item));
     } else {
-      //No response if the lock is not available
-      System.out.println("[" + this.getSelf().path().name() + "] [onVersion] Owner: It's locked: item " + item.getKey() +  " -> lock by " + this.locks.get(msg.item.getKey()) + " me: " + msg.clientName +  " (on node) " + this.key);
+      //The lock is not available: tell the coordinator, which may no more reach W
+      System.out.println("[" + this.getSelf().path().name() + "] [onVersion] Owner: It's locked: item " + item.getKey() +  " -> lock by " + this.locks.get(msg.item.getKey()) + " me: " + msg.requestId +  " (on node) " + this.key);
+      this.send(this.getSender(), new Message.Locked(msg.requestId, item.getKey()));
     }
   }
 
@@ -1332,12 +2500,15 @@ public class Node extends AbstractActor {
     Item item = new Item(msg.item);
     System.out.println("["+this.getSelf().path().name()+"] [onUpdateVersion] Coordinator");
 
-    Request req = this.requests.get(msg.clientName);
+    Request req = this.requests.get(msg.requestId);
 
     // i. check if the request is yet there (no timeout expired)
     if(req != null) {
+      // a replica which answers after a node has been asked to stand in for it replaces the stand-in
+      this.revokeStandIn(req, this.getSender());
       // ii. Update the number of the responses relative to the write requested
       req.setOperationCounter(req.getOperationCounter() + 1);
+      req.getResponders().add(this.getSender());
       Item itemReq = req.getItem();
       int nW = req.getOperationCounter();
 
@@ -1348,45 +2519,86 @@ public class Node extends AbstractActor {
       }
       
       if(nW == this.W) {
-        // v. if quorum is reached perform the following operation
+        // v. if quorum is reached perform the following operation. The stand-ins of a sloppy quorum know only
+        // their hints: at least a replica must be in the quorum and the version never goes below the local one
+        if(!this.hasReplicaAnswer(req)) {
+          this.rejectStandInQuorum(req);
+          return;
+        }
+        if(this.items.getVersion(itemReq.getKey()) > itemReq.getVersion()) {
+          itemReq.setVersion(this.items.getVersion(itemReq.getKey()));
+        }
+        // a conditional update stops here if the version has changed
+        if(this.isConflict(req, itemReq.getVersion())) {
+          return;
+        }
         // Vi. update the version of the item to a new one (the one stored is the last already there)
         itemReq.setVersion(itemReq.getVersion() + 1);
 
         // Vii. remove the request (otherwise the timeout will expire)
-        this.requests.remove(msg.clientName);
+        this.removeRequest(msg.requestId);
 
         // model a random network/processing delay
         try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
         catch (InterruptedException e) { e.printStackTrace(); }
 
         // Viii. return the response to the client (with the new item updated)
-        req.getClient().tell(new ClientMessage.UpdateResult(Result.SUCCESS, itemReq), ActorRef.noSender());
+        this.replyUpdate(req, new ClientMessage.UpdateResult(Result.SUCCESS, itemReq, req.getClientRequestId()));
 
         // iV. Send the item to update to all the N nodes
-        for (int node : getResponsibleNode(item.getKey())) {
+        for (int node : this.routingTable.getPreferenceList(item.getKey())) {
 
           if(node == this.key){
-            String lock = this.locks.get(itemReq.getKey());
+            Long lock = this.locks.get(itemReq.getKey());
             // i. Check if the lock is the one requested
-            if(lock != null && lock.equals(msg.clientName)) {
+            if(lock != null && lock == msg.requestId) {
               // ii. if the lock is the one requested remove it
               this.locks.remove(itemReq.getKey());
             }
             // iii. Update the item
-            this.items.put(itemReq.getKey(), itemReq);
+            this.storeItem(itemReq);
             System.out.println("["+this.getSelf().path().name()+"] [onWriteInformation] Coordinator: " + key + " ITEM: " + itemReq);
           } else {
             // model a random network/processing delay
             try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
             catch (InterruptedException e) { e.printStackTrace(); }
 
-            (peers.get(node)).tell(new Message.Write(msg.clientName, itemReq), this.getSelf());
+            (peers.get(node)).tell(new Message.Write(msg.requestId, itemReq), this.getSelf());
+          }
+        }
+
+        // the nodes which stand in for a replica keep the item as a hint for it; if the replica has answered
+        // in the end, they only release the lock
+        for (Map.Entry<ActorRef, Integer> hinted : req.getHintedNodes().entrySet()) {
+          if (req.getResponders().contains(this.peers.get(hinted.getValue()))) {
+            hinted.getKey().tell(new Message.ReleaseLock(msg.requestId, itemReq.getKey()), this.getSelf());
+          } else {
+            hinted.getKey().tell(new Message.Write(msg.requestId, itemReq, hinted.getValue()), this.getSelf());
           }
         }
       }
     }
   }
 
+  // The quorum W of a conditional update has been reached and version is the newest version of the quorum: if it
+  // is not the version expected by the client, abort the update without writing, release the locks and return
+  // the version found (its value is not known). Return true if the update has been aborted
+  private boolean isConflict(Request req, long version){
+    if(req.getExpectedVersion() == null || req.getExpectedVersion() == version){
+      return false;
+    }
+    System.out.println("["+this.getSelf().path().name()+"] [onUpdateVersion] Coordinator: CONFLICT item " + req.getItem().getKey() + " expected version " + req.getExpectedVersion() + " found " + version);
+    this.removeRequest(req.getRequestId());
+    this.releaseUpdateLocks(req);
+
+    // model a random network/processing delay
+    try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    this.replyUpdate(req, new ClientMessage.UpdateResult(Result.CONFLICT, new Item(req.getItem().getKey(), null, version), req.getClientRequestId()));
+    return true;
+  }
+
   // d. the responsible nodes update the item
 
   //Last message to write the updated item
@@ -1395,17 +2607,647 @@ public class Node extends AbstractActor {
   // iii. Update the item
   private void onWrite(Message.Write msg){
     Item item = new Item(msg.item);
-    String lock = this.locks.get(item.getKey());
+    this.sampler.record(item.getKey());
+    Long lock = this.locks.get(item.getKey());
     // i. Check if the lock is the one requested
-    if(lock != null && lock.equals(msg.clientName)) {
+    if(lock != null && lock == msg.requestId) {
       // ii. if the lock is the one requested remove it
       this.locks.remove(item.getKey());
     }
+    // the present node stands in for a crashed replica: keep the item for it until it recovers
+    if(msg.hintFor != null && msg.hintFor != this.key) {
+      this.hints.computeIfAbsent(msg.hintFor, k -> new HashMap<>()).merge(item.getKey(), item, (a, b) -> a.getVersion() >= b.getVersion() ? a : b);
+      System.out.println("["+this.getSelf().path().name()+"] [onWriteInformation] Hint for " + msg.hintFor + " ITEM: " + item);
+
+      // the replica may have been only slow: hand the item over right away. The hint is dropped when the
+      // replica acks, otherwise it is kept until the replica recovers (HintReplayRequest)
+      ActorRef replica = this.peers.get(msg.hintFor);
+      if(replica != null) {
+        // model a random network/processing delay
+        try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
+        catch (InterruptedException e) { e.printStackTrace(); }
+
+        replica.tell(new Message.HintReplay(Collections.singleton(new Item(item))), this.getSelf());
+      }
+      return;
+    }
     // iii. Update the item
-    this.items.put(item.getKey(), item);
+    this.storeItem(item);
     System.out.println("["+this.getSelf().path().name()+"] [onWriteInformation] Owner: " + key + " ITEM: " + item);
   }
 
+  /*----------SLOPPY QUORUM----------*/
+
+  // Some replicas have not answered the version request of an update within the sloppy quorum timeout
+  // (they are probably crashed). The coordinator asks the nodes which follow the preference list on the
+  // ring to stand in for them: each one locks the item and answers like a replica, so its answer counts
+  // toward W, and then it keeps the written item as a hint for the missing replica (hinted handoff)
+  private void onHintTimeout(Message.HintTimeout msg){
+    Request req = this.requests.get(msg.requestId);
+    if(req == null || req.getType() != Type.UPDATE || req.getItem().getKey() != msg.itemId) {
+      return;
+    }
+
+    // the replicas which have not answered (a replica which has answered Locked is alive: nobody stands in for it)
+    int[] respNodes = this.routingTable.getPreferenceList(msg.itemId);
+    List<Integer> missing = new ArrayList<>();
+    for (int node : respNodes) {
+      ActorRef replica = this.peers.get(node);
+      if (node != this.key && !req.getResponders().contains(replica) && !req.getRefusals().contains(replica)) {
+        missing.add(node);
+      }
+    }
+
+    // the nodes after the preference list, in ring order (the coordinator keeps its own replica only)
+    int[] extended = this.routingTable.getExtendedPreferenceList(msg.itemId, this.peers.size());
+    int m = 0;
+    for (int i = respNodes.length; i < extended.length && m < missing.size(); i++) {
+      if (extended[i] == this.key) {
+        continue;
+      }
+      ActorRef fallback = this.peers.get(extended[i]);
+      req.getHintedNodes().put(fallback, missing.get(m));
+      System.out.println("["+this.getSelf().path().name()+"] [onHintTimeout] Coordinator: node " + extended[i] + " stands in for " + missing.get(m) + " item " + msg.itemId);
+
+      // model a random network/processing delay
+      try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
+      catch (InterruptedException e) { e.printStackTrace(); }
+
+      fallback.tell(new Message.Version(msg.requestId, req.getItem(), missing.get(m)), this.getSelf());
+      m++;
+    }
+  }
+
+  // The replica has answered the update (with its version or a refusal): the node asked to stand in for it,
+  // if any, is no more needed. It releases the lock and its answer no more counts toward W, otherwise the
+  // replica would be counted twice, or a locked replica would be replaced by a node which grants the lock again
+  private void revokeStandIn(Request req, ActorRef replica){
+    Integer replicaKey = null;
+    for (int node : this.routingTable.getPreferenceList(req.getItem().getKey())) {
+      if (replica.equals(this.peers.get(node))) {
+        replicaKey = node;
+      }
+    }
+    if (replicaKey == null) {
+      return;   // the sender is a stand-in
+    }
+    Iterator<Map.Entry<ActorRef, Integer>> it = req.getHintedNodes().entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<ActorRef, Integer> hinted = it.next();
+      if (hinted.getValue().equals(replicaKey)) {
+        it.remove();
+        if (req.getResponders().remove(hinted.getKey())) {
+          req.setOperationCounter(req.getOperationCounter() - 1);
+        }
+        System.out.println("["+this.getSelf().path().name()+"] [revokeStandIn] Coordinator: node " + replicaKey + " has answered, its stand-in is released");
+        hinted.getKey().tell(new Message.ReleaseLock(req.getRequestId(), req.getItem().getKey()), this.getSelf());
+      }
+    }
+  }
+
+  // true if a replica of the item (the coordinator included) is in the quorum of the update, not only stand-ins
+  private boolean hasReplicaAnswer(Request req){
+    int itemKey = req.getItem().getKey();
+    for (int node : this.routingTable.getPreferenceList(itemKey)) {
+      if (node == this.key) {
+        Long lock = this.locks.get(itemKey);
+        if (lock != null && lock == req.getRequestId()) {
+          return true;
+        }
+      } else if (req.getResponders().contains(this.peers.get(node))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // The quorum W of an update is made only of stand-ins: its version may be older than the one of the replicas,
+  // abort the update
+  private void rejectStandInQuorum(Request req){
+    System.out.println("["+this.getSelf().path().name()+"] [onUpdateVersion] ABORT UPDATE REQUEST: item " + req.getItem().getKey() + " no replica in the quorum");
+    this.removeRequest(req.getRequestId());
+    this.releaseUpdateLocks(req);
+
+    // model a random network/processing delay
+    try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    this.replyUpdate(req, new ClientMessage.UpdateResult(Result.ERROR, null, req.getClientRequestId()));
+  }
+
+  // version of the item kept as a hint for the given replica, -1 if there is none
+  private long getHintVersion(int replicaKey, int itemKey){
+    Map<Integer, Item> replicaHints = this.hints.get(replicaKey);
+    Item item = replicaHints == null ? null : replicaHints.get(itemKey);
+    return item == null ? -1 : item.getVersion();
+  }
+
+  // A peer has recovered: hand over the items written on the present node in its place
+  private void onHintReplayRequest(Message.HintReplayRequest msg){
+    Map<Integer, Item> replicaHints = this.hints.remove(msg.key);
+    if(replicaHints == null){
+      return;
+    }
+    System.out.println("["+this.getSelf().path().name()+"] [onHintReplayRequest] Replaying " + replicaHints.size() + " hints to node " + msg.key);
+
+    // model a random network/processing delay
+    try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    this.getSender().tell(new Message.HintReplay(Collections.unmodifiableSet(new HashSet<>(replicaHints.values()))), this.getSelf());
+  }
+
+  // The items written on a peer in place of the present node (crashed or slow): keep the ones which are newer
+  // than the local copy and which the node is still responsible for, then ack them so the peer drops its hints
+  private void onHintReplay(Message.HintReplay msg){
+    System.out.println("["+this.getSelf().path().name()+"] [onHintReplay] " + msg.itemSet);
+    Map<Integer, Long> versions = new HashMap<>();
+    for(Item item : msg.itemSet){
+      if(this.routingTable.isResponsible(this.key, item.getKey()) && this.items.getVersion(item.getKey()) < item.getVersion()){
+        this.storeItem(item);
+      }
+      versions.put(item.getKey(), item.getVersion());
+    }
+    this.getSender().tell(new Message.HintReplayAck(this.key, Collections.unmodifiableMap(versions)), this.getSelf());
+  }
+
+  // The replica has received the hints: drop them, unless a newer hint has been written meanwhile
+  private void onHintReplayAck(Message.HintReplayAck msg){
+    Map<Integer, Item> replicaHints = this.hints.get(msg.key);
+    if(replicaHints == null){
+      return;
+    }
+    for(Map.Entry<Integer, Long> acked : msg.versions.entrySet()){
+      Item hint = replicaHints.get(acked.getKey());
+      if(hint != null && hint.getVersion() <= acked.getValue()){
+        replicaHints.remove(acked.getKey());
+      }
+    }
+    if(replicaHints.isEmpty()){
+      this.hints.remove(msg.key);
+    }
+  }
+
+  /*----------END SLOPPY QUORUM----------*/
+
+  /*----------ANTI-ENTROPY----------*/
+
+  //Start a round of anti-entropy with a replica peer:
+  // i. choose a random node which shares some arcs of the ring with the present node
+  // ii. split the shared arcs in intervals of tokens and send the hash of the items of every interval to the peer
+  private void onAntiEntropy(Message.AntiEntropy msg){
+    // i. choose the peer
+    List<Integer> replicaPeers = new ArrayList<>(this.routingTable.getReplicaPeers(this.key));
+    if(replicaPeers.isEmpty()){
+      return;
+    }
+    int peerKey = replicaPeers.get(rnd.nextInt(replicaPeers.size()));
+    ActorRef peer = this.peers.get(peerKey);
+    if(peer == null){
+      return;
+    }
+
+    // ii. hash of the shared intervals
+    long[] intervals = this.getIntervals(this.routingTable.getSharedArcs(this.key, peerKey));
+    long[] hashes = new long[intervals.length / 2];
+    for(int i = 0; i < hashes.length; i++){
+      hashes[i] = this.intervalHash(intervals[2 * i], intervals[2 * i + 1]);
+    }
+
+    // model a random network/processing delay
+    try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    peer.tell(new Message.MerkleSummary(this.key, intervals, hashes), this.getSelf());
+  }
+
+  //Compare the hashes of the peer with the local ones and send back the hashes of the buckets of the intervals which differ
+  private void onMerkleSummary(Message.MerkleSummary msg){
+    if(this.merkleTree == null){
+      return;
+    }
+    List<Long> differentIntervals = new ArrayList<>();
+    List<long[]> leafHashes = new ArrayList<>();
+    for(int i = 0; i < msg.hashes.length; i++){
+      long low = msg.intervals[2 * i];
+      long high = msg.intervals[2 * i + 1];
+      if(this.intervalHash(low, high) != msg.hashes[i]){
+        differentIntervals.add(low);
+        differentIntervals.add(high);
+        leafHashes.add(this.leafHashes(low, high));
+      }
+    }
+    if(leafHashes.isEmpty()){
+      return;   // the replicas agree on the shared intervals
+    }
+    System.out.println("["+this.getSelf().path().name()+"] [onMerkleSummary] " + leafHashes.size() + " of " + msg.hashes.length + " intervals differ from node " + msg.key);
+
+    long[] intervals = new long[differentIntervals.size()];
+    for(int i = 0; i < intervals.length; i++){
+      intervals[i] = differentIntervals.get(i);
+    }
+
+    // model a random network/processing delay
+    try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    this.getSender().tell(new Message.MerkleLeaves(this.key, intervals, leafHashes.toArray(new long[0][])), this.getSelf());
+  }
+
+  //Compare the hashes of the buckets of the peer with the local ones and send to the peer the local items of the buckets which differ;
+  // the peer replies with the items which are newer or missing on the present node
+  private void onMerkleLeaves(Message.MerkleLeaves msg){
+    if(this.merkleTree == null){
+      return;
+    }
+    List<Long> ranges = new ArrayList<>();
+    Set<Item> itemSet = new HashSet<>();
+    for(int i = 0; i < msg.leafHashes.length; i++){
+      long low = msg.intervals[2 * i];
+      long high = msg.intervals[2 * i + 1];
+      long[] localHashes = this.leafHashes(low, high);
+      int firstLeaf = this.merkleTree.leafOf(low);
+      for(int j = 0; j < localHashes.length && j < msg.leafHashes[i].length; j++){
+        if(localHashes[j] == msg.leafHashes[i][j]){
+          continue;
+        }
+        long rangeLow = Math.max(low, this.merkleTree.leafLow(firstLeaf + j));
+        long rangeHigh = Math.min(high, this.merkleTree.leafHigh(firstLeaf + j));
+        if(!ranges.isEmpty() && ranges.get(ranges.size() - 1) == rangeLow - 1){  // contiguous to the previous range
+          ranges.set(ranges.size() - 1, rangeHigh);
+        } else {
+          ranges.add(rangeLow);
+          ranges.add(rangeHigh);
+        }
+        for(int itemKey : this.items.keysInTokenRange(rangeLow, rangeHigh)){
+          itemSet.add(this.antiEntropyItem(itemKey));
+        }
+      }
+    }
+    if(ranges.isEmpty()){
+      return;
+    }
+    long[] rangeArray = new long[ranges.size()];
+    for(int i = 0; i < rangeArray.length; i++){
+      rangeArray[i] = ranges.get(i);
+    }
+    this.antiEntropyItemsSent += itemSet.size();
+    System.out.println("["+this.getSelf().path().name()+"] [onMerkleLeaves] Sending " + itemSet.size() + " items of " + (rangeArray.length / 2) + " ranges to node " + msg.key);
+
+    // model a random network/processing delay
+    try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    this.getSender().tell(new Message.AntiEntropyPush(rangeArray, Collections.unmodifiableSet(itemSet), true), this.getSelf());
+  }
+
+  // copy of a stored item to push to a peer, with the clock of its version if it has one (VECTOR_CLOCK)
+  private Item antiEntropyItem(int itemKey){
+    Item item = new Item(this.items.get(itemKey));
+    for(Item sibling : this.getSiblings(itemKey)){
+      if(sibling.getVersion() == item.getVersion() && compareValues(sibling.getValue(), item.getValue()) == 0){
+        item.setClock(sibling.getClock());
+      }
+    }
+    return item;
+  }
+
+  //Apply the items of the peer which are newer than the local ones; if requested, send back the local items of the
+  // same ranges which are newer or which the peer does not have
+  private void onAntiEntropyPush(Message.AntiEntropyPush msg){
+    Map<Integer, Long> pushedVersions = new HashMap<>();
+    for(Item item : msg.itemSet){
+      pushedVersions.put(item.getKey(), item.getVersion());
+      if(this.locks.containsKey(item.getKey()) || !this.routingTable.isResponsible(this.key, item.getKey())){
+        continue;   // a write of the item is in progress, or the item is no more under the responsibility of the node
+      }
+      long storedVersion = this.items.getVersion(item.getKey());
+      if(this.config.writeProtocol == WriteProtocol.HLC_LWW){
+        if(this.applyDirect(new Item(item)) != storedVersion){
+          this.antiEntropyItemsApplied++;
+        }
+      } else if(storedVersion < item.getVersion()){
+        // with VECTOR_CLOCK the item joins the local siblings; an item without clock replaces them
+        if(this.config.writeProtocol == WriteProtocol.VECTOR_CLOCK && item.getClock() != null){
+          this.applyVersioned(new Item(item));
+        } else {
+          this.siblings.remove(item.getKey());
+          this.storeItem(new Item(item));
+        }
+        this.antiEntropyItemsApplied++;
+      }
+    }
+    if(!msg.reply){
+      return;
+    }
+
+    Set<Item> itemSet = new HashSet<>();
+    for(int i = 0; i + 1 < msg.ranges.length; i += 2){
+      for(int itemKey : this.items.keysInTokenRange(msg.ranges[i], msg.ranges[i + 1])){
+        Long pushedVersion = pushedVersions.get(itemKey);
+        if(pushedVersion == null || pushedVersion < this.items.getVersion(itemKey)){
+          itemSet.add(this.antiEntropyItem(itemKey));
+        }
+      }
+    }
+    if(itemSet.isEmpty()){
+      return;
+    }
+    this.antiEntropyItemsSent += itemSet.size();
+    System.out.println("["+this.getSelf().path().name()+"] [onAntiEntropyPush] Sending back " + itemSet.size() + " items");
+
+    // model a random network/processing delay
+    try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    this.getSender().tell(new Message.AntiEntropyPush(msg.ranges, Collections.unmodifiableSet(itemSet), false), this.getSelf());
+  }
+
+  // split arcs of the ring [from, to) (see RoutingTable.getArcs) in intervals of tokens [low, high] which do not wrap around
+  private long[] getIntervals(long[] arcs){
+    long minToken = this.config.partitioner.minToken();
+    long maxToken = this.config.partitioner.maxToken();
+    List<Long> intervals = new ArrayList<>();
+    for(int i = 0; i + 1 < arcs.length; i += 2){
+      long from = arcs[i];
+      long to = arcs[i + 1];
+      if(from == to){   // the whole ring
+        intervals.add(minToken);
+        intervals.add(maxToken);
+      } else if(from < to){
+        intervals.add(from);
+        intervals.add(to - 1);
+      } else {
+        intervals.add(from);
+        intervals.add(maxToken);
+        if(to > minToken){
+          intervals.add(minToken);
+          intervals.add(to - 1);
+        }
+      }
+    }
+    long[] result = new long[intervals.size()];
+    for(int i = 0; i < result.length; i++){
+      result[i] = intervals.get(i);
+    }
+    return result;
+  }
+
+  // hash of the items whose token is in [low, high]: the buckets entirely contained in the interval are read
+  // from the tree, the items of the buckets at the bounds are hashed one by one
+  private long intervalHash(long low, long high){
+    int firstLeaf = this.merkleTree.leafOf(low);
+    int lastLeaf = this.merkleTree.leafOf(high);
+    if(firstLeaf == lastLeaf){
+      return this.bucketHash(firstLeaf, low, high);
+    }
+    long hash = this.bucketHash(firstLeaf, low, high) ^ this.bucketHash(lastLeaf, low, high);
+    if(firstLeaf + 1 < lastLeaf){
+      hash ^= this.merkleTree.range(firstLeaf + 1, lastLeaf - 1);
+    }
+    return hash;
+  }
+
+  // hashes of the buckets of the interval [low, high], each one restricted to the interval
+  private long[] leafHashes(long low, long high){
+    int firstLeaf = this.merkleTree.leafOf(low);
+    long[] hashes = new long[this.merkleTree.leafOf(high) - firstLeaf + 1];
+    for(int i = 0; i < hashes.length; i++){
+      hashes[i] = this.bucketHash(firstLeaf + i, low, high);
+    }
+    return hashes;
+  }
+
+  // hash of the items of the bucket whose token is in [low, high]
+  private long bucketHash(int leaf, long low, long high){
+    long leafLow = this.merkleTree.leafLow(leaf);
+    long leafHigh = this.merkleTree.leafHigh(leaf);
+    if(low <= leafLow && leafHigh <= high){
+      return this.merkleTree.leaf(leaf);
+    }
+    long hash = 0;
+    for(int itemKey : this.items.keysInTokenRange(Math.max(low, leafLow), Math.min(high, leafHigh))){
+      hash ^= MerkleTree.itemHash(itemKey, this.items.getVersion(itemKey));
+    }
+    return hash;
+  }
+
+  // recompute the tree from the stored items (after the recovery from the disk)
+  private void rebuildMerkleTree(){
+    if(this.merkleTree == null){
+      return;
+    }
+    this.merkleTree.clear();
+    for(int itemKey : this.items.keys()){
+      this.merkleTree.update(this.config.partitioner.token(itemKey), itemKey, -1, this.items.getVersion(itemKey));
+    }
+  }
+
+  /*----------END ANTI-ENTROPY----------*/
+
+  /*----------LOCK-FREE UPDATE (HLC_LWW, VECTOR_CLOCK)----------*/
+
+  //Update with the HLC_LWW or VECTOR_CLOCK protocol, in a single round and without locks:
+  // i. stamp the item with a new timestamp of the clock (HLC_LWW) or with a vector clock (VECTOR_CLOCK), which determines its version
+  // ii. register the request
+  // iii. send the item to the N responsible nodes (the coordinator applies it directly if it is one of them)
+  // iV. the request succeeds when W nodes have acknowledged the write
+  private void updateDirect(Request req){
+    Item item = req.getItem();
+    long requestId = req.getRequestId();
+
+    // i. stamp the item
+    if (this.config.writeProtocol == WriteProtocol.VECTOR_CLOCK) {
+      // the new version descends from the context of the client. The counter of the coordinator is
+      // greater than the ones of all the local versions, so two writes of the coordinator never get the same clock
+      VectorClock context = item.getClock() != null ? item.getClock() : new VectorClock();
+      long counter = context.get(this.key);
+      for (Item sibling : this.getSiblings(item.getKey())) {
+        counter = Math.max(counter, sibling.getClock().get(this.key));
+      }
+      VectorClock stamp = context.with(this.key, counter + 1);
+      // a stored item without clock (see applyVersioned) is replaced only by a higher version
+      long clocklessVersion = this.clocklessVersion(item.getKey());
+      if (stamp.sum() <= clocklessVersion) {
+        stamp = stamp.with(this.key, stamp.get(this.key) + clocklessVersion + 1 - stamp.sum());
+      }
+      item.setClock(stamp);
+      item.setVersion(stamp.sum());
+    } else {
+      // the local version is merged first, so the new timestamp is greater than it
+      this.clock.update(this.items.getVersion(item.getKey()));
+      item.setVersion(this.clock.now());
+    }
+
+    // ii. register the request
+    this.requests.put(requestId, req);
+
+    // iii. send the item to the N responsible nodes
+    for (int node : this.routingTable.getPreferenceList(item.getKey())) {
+      if (node == this.key) {
+        this.applyDirect(new Item(item));
+        req.setOperationCounter(req.getOperationCounter() + 1);
+      } else {
+        // model a random network/processing delay
+        try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
+        catch (InterruptedException e) { e.printStackTrace(); }
+
+        this.send(peers.get(node), new Message.DirectWrite(requestId, new Item(item)));
+      }
+    }
+
+    // iV. W == 1 and the coordinator is a replica
+    if (req.getOperationCounter() >= this.W) {
+      this.completeDirect(req);
+      return;
+    }
+
+    //Set a timeout that will expires if not enough W acknowledgements arrive in time
+    this.scheduleRequestTimer(req, TimeUnit.SECONDS.toMillis(Main.T), new Message.Timeout(requestId, item.getKey()));
+  }
+
+  // A replica receives a stamped item: it keeps it if it is newer than its own copy (or concurrent with it,
+  // with VECTOR_CLOCK), then acknowledges
+  private void onDirectWrite(Message.DirectWrite msg){
+    this.sampler.record(msg.item.getKey());
+    long storedVersion = this.applyDirect(new Item(msg.item));
+
+    // model a random network/processing delay
+    try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    this.send(this.getSender(), new Message.WriteAck(msg.requestId, msg.item.getKey(), msg.item.getVersion(), storedVersion));
+  }
+
+  private long applyDirect(Item item){
+    if (this.config.writeProtocol == WriteProtocol.VECTOR_CLOCK) {
+      return this.applyVersioned(item);
+    }
+    this.clock.update(item.getVersion());
+    return this.applyLww(item);
+  }
+
+  // vector clocks: the item replaces the local versions it descends from and it is discarded if a local
+  // version descends from it. The store keeps the sibling with the highest version, which is the one
+  // returned by the other paths of the node (transfers, recovery); return its version.
+  // The transfers (join, leave, recovery, anti-entropy) and the log carry only the version of an item, not
+  // its clock: a stored item newer than all the local siblings has no clock, and the item replaces it only
+  // if its version is higher (on a tie the greater value wins), as with last writer wins
+  private long applyVersioned(Item item){
+    List<Item> local = this.siblings.computeIfAbsent(item.getKey(), k -> new ArrayList<>());
+    long storedVersion = this.clocklessVersion(item.getKey());
+    if (storedVersion >= 0) {
+      if (storedVersion > item.getVersion()
+          || (storedVersion == item.getVersion() && compareValues(item.getValue(), this.items.get(item.getKey()).getValue()) <= 0)) {
+        return storedVersion;
+      }
+      local.clear();  // older than the stored item
+    }
+    if (addSibling(local, item)) {
+      Item representative = local.get(0);
+      for (Item sibling : local) {
+        if (sibling.getVersion() > representative.getVersion()
+            || (sibling.getVersion() == representative.getVersion() && compareValues(sibling.getValue(), representative.getValue()) > 0)) {
+          representative = sibling;
+        }
+      }
+      this.storeItem(representative);
+      System.out.println("["+this.getSelf().path().name()+"] [onDirectWrite] Owner: " + key + " ITEM: " + item + " siblings: " + local.size());
+    }
+    return this.items.getVersion(item.getKey());
+  }
+
+  // version of the stored item if it has no clock (it is newer than all the local siblings), -1 otherwise
+  private long clocklessVersion(int itemKey){
+    long storedVersion = this.items.getVersion(itemKey);
+    List<Item> local = this.siblings.get(itemKey);
+    if (local != null) {
+      for (Item sibling : local) {
+        if (sibling.getVersion() >= storedVersion) {
+          return -1;
+        }
+      }
+    }
+    return storedVersion;
+  }
+
+  // versions of the item with their vector clocks; empty if the item is not stored or has no clock
+  private List<Item> getSiblings(int itemKey){
+    List<Item> local = this.siblings.get(itemKey);
+    if (local == null || !this.items.containsKey(itemKey)) {
+      return Collections.emptyList();
+    }
+    List<Item> copy = new ArrayList<>(local.size());
+    for (Item sibling : local) {
+      copy.add(new Item(sibling));
+    }
+    return copy;
+  }
+
+  // add a version to a list of concurrent versions: the versions it descends from are removed, and it is
+  // not added if one of them descends from it (or it is already there); return true if it has been added
+  private static boolean addSibling(List<Item> siblings, Item item){
+    VectorClock clock = item.getClock() != null ? item.getClock() : new VectorClock();
+    for (Item sibling : siblings) {
+      if (sibling.getClock().descends(clock)) {
+        return false;
+      }
+    }
+    siblings.removeIf(sibling -> clock.descends(sibling.getClock()));
+    Item copy = new Item(item);
+    copy.setClock(clock);
+    siblings.add(copy);
+    return true;
+  }
+
+  // last writer wins: store the item if its timestamp is greater than the one of the stored copy (on a tie
+  // the greater value wins, so that all the replicas choose the same item); return the version now stored
+  private long applyLww(Item item){
+    long storedVersion = this.items.getVersion(item.getKey());
+    if (storedVersion < item.getVersion()
+        || (storedVersion == item.getVersion() && compareValues(item.getValue(), this.items.get(item.getKey()).getValue()) > 0)) {
+      this.storeItem(item);
+      System.out.println("["+this.getSelf().path().name()+"] [onDirectWrite] Owner: " + key + " ITEM: " + item);
+      return item.getVersion();
+    }
+    return storedVersion;
+  }
+
+  private static int compareValues(String a, String b){
+    if (a == null || b == null) {
+      return a == null ? (b == null ? 0 : -1) : 1;
+    }
+    return a.compareTo(b);
+  }
+
+  // The coordinator counts the acknowledgements of the replicas until the quorum W is reached
+  private void onWriteAck(Message.WriteAck msg){
+    if (this.config.writeProtocol == WriteProtocol.HLC_LWW) {
+      this.clock.update(msg.storedVersion);
+    }
+
+    Request req = this.requests.get(msg.requestId);
+    if (req == null || req.getType() != Type.UPDATE || req.getItem().getKey() != msg.itemId || req.getItem().getVersion() != msg.version) {
+      return;
+    }
+    req.setOperationCounter(req.getOperationCounter() + 1);
+    if (req.getOperationCounter() == this.W) {
+      this.completeDirect(req);
+    }
+  }
+
+  private void completeDirect(Request req){
+    this.removeRequest(req.getRequestId());
+
+    // model a random network/processing delay
+    try { Thread.sleep(rnd.nextInt(this.MAXRANDOMDELAYTIME*100) * 10); }
+    catch (InterruptedException e) { e.printStackTrace(); }
+
+    this.replyUpdate(req, new ClientMessage.UpdateResult(Result.SUCCESS, req.getItem(), req.getClientRequestId()));
+  }
+
+  /*----------END LOCK-FREE UPDATE----------*/
+
   /*----------END UPDATE----------*/
 
   // Print the list of nodes
@@ -1418,5 +3260,21 @@ public class Node extends AbstractActor {
     System.out.println("["+this.getSelf().path().name()+"] [onPrintItemList] Node: " + key +  "  " + this.items);
   }
 
+  // Print the counters of the node
+  private void onPrintStats(Message.PrintStats msg){
+    System.out.println("["+this.getSelf().path().name()+"] [onPrintStats] Node: " + key
+      + " read repairs issued: " + this.readRepairsIssued
+      + " read repairs applied: " + this.readRepairsApplied
+      + " hedged reads: " + this.hedgedReads
+      + " refusals: " + this.refusalsReceived
+      + " aborted on refusal: " + this.refusalAborts
+      + " coalesced writes: " + this.coalescedWrites
+      + " request timers scheduled: " + this.requestTimersScheduled
+      + " cancelled: " + this.requestTimersCancelled
+      + " anti-entropy items sent: " + this.antiEntropyItemsSent
+      + " anti-entropy items applied: " + this.antiEntropyItemsApplied
+      + " read latency p50/p99: " + this.latencies.getPercentile(50, 0) + "/" + this.latencies.getPercentile(99, 0) + " ms");
+  }
+
   /*======================*/
 }
@@ -0,0 +1,171 @@
+package it.unitn.ds1;
+
+import java.io.File;
+import java.io.Serializable;
+
+enum StorageType { HEAP, OFF_HEAP, LSM }
+
+// NONE:  the coordinator of a get does not correct the replicas
+// ASYNC: the stale replicas are repaired after the reply to the client
+// SYNC:  the stale replicas are repaired before the reply to the client: the coordinator waits for their
+//        acks, at most for the read repair window (T seconds if there is no window), so a following read
+//        finds them repaired
+enum ReadRepair { NONE, ASYNC, SYNC }
+
+// QUORUM_LOCK: an update locks the item on the replicas and collects their versions (Version/UpdateVersion),
+//              then it writes the next version (Write)
+// HLC_LWW:     the coordinator stamps the item with a hybrid logical clock timestamp, which becomes its
+//              version, and sends it to the replicas in a single round (LwwWrite/WriteAck) without locks;
+//              a replica keeps the write with the highest timestamp (last writer wins)
+// VECTOR_CLOCK: like HLC_LWW, but the item is stamped with a vector clock which descends from the context
+//              of the client; a replica keeps all the concurrent versions (siblings) and a get returns
+//              them to the client, which reconciles them with its next update. Digest reads and read
+//              repair are not used with this protocol
+enum WriteProtocol { QUORUM_LOCK, HLC_LWW, VECTOR_CLOCK }
+
+// Settings of a node which are not replication parameters (N, R, W and T are passed to Node.props).
+// Every setter returns the configuration itself, so that it can be written inline, e.g.
+//   Node.props(N, R, W, T, new NodeConfig().storage(StorageType.OFF_HEAP))
+// The default configuration reproduces the original behaviour of the node.
+public class NodeConfig implements Serializable {
+    StorageType storage = StorageType.HEAP;   // where the node keeps the values of its data items
+    String lsmDirectory = null;               // directory of the segments of the LSM storage (<directory>/<node name>/)
+    int lsmMemtableItems = 4096;              // the LSM memtable is flushed in a segment when it contains this number of records
+    int lsmCompactionSegments = 4;            // the LSM segments are compacted when there are this number of them
+    String walDirectory = null;               // directory of the write-ahead log, null --> no log
+    int groupCommitSize = 32;                 // the log is committed as soon as this number of records is pending...
+    int groupCommitIntervalMs = 10;           // ...or every groupCommitIntervalMs milliseconds
+    int checkpointIntervalMs = 0;             // the items are checkpointed in a snapshot file every checkpointIntervalMs milliseconds...
+    int checkpointLogRecords = 0;             // ...or as soon as the log contains checkpointLogRecords records (0 --> disabled)
+    int tokensPerNode = 1;                    // positions (virtual nodes) of every node on the ring; all the nodes must use the same value
+    Partitioner partitioner = Partitioner.RAW; // placement of the keys on the ring; all the nodes must use the same value
+    int rebalanceIntervalMs = 0;              // the nodes exchange their load every rebalanceIntervalMs milliseconds (0 --> no rebalancing)
+    double rebalanceOverloadFactor = 2.0;     // a node is overloaded when its request rate is rebalanceOverloadFactor times the ring average...
+    int rebalanceWindows = 3;                 // ...for rebalanceWindows consecutive intervals
+    WriteProtocol writeProtocol = WriteProtocol.QUORUM_LOCK; // protocol of the updates; all the nodes must use the same value
+    ReadRepair readRepair = ReadRepair.NONE;  // repair of the replicas which return an old version of an item to a get
+    int readRepairWindowMs = 0;               // after the reply, the late answers of the replicas are collected for this time and repaired too
+    boolean digestReads = false;              // a get asks the value to one replica and only the version to the others
+    double hedgePercentile = 0;               // hedged reads: a get contacts R replicas and the others after this percentile of the read latency (0 --> all N at once)
+    int hedgeMinDelayMs = 50;                 // lower bound of the hedge delay, used until the latencies have been measured
+    int antiEntropyIntervalMs = 0;            // every antiEntropyIntervalMs milliseconds the node compares its items with a replica peer (0 --> disabled)
+    int sloppyQuorumTimeoutMs = 0;            // an update asks the next nodes of the ring to stand in for the replicas which have not answered after this time (0 --> strict quorum)
+
+    public NodeConfig storage(StorageType _storage){
+        storage = _storage;
+        return this;
+    }
+
+    // keep the items in an LSM tree whose segments are written in <directory>/<node name>/
+    public NodeConfig lsm(String directory, int memtableItems, int compactionSegments){
+        storage = StorageType.LSM;
+        lsmDirectory = directory;
+        lsmMemtableItems = memtableItems;
+        lsmCompactionSegments = compactionSegments;
+        return this;
+    }
+
+    // write the items of the node on a write-ahead log (<directory>/<node name>.wal).
+    // A node with a log simulates a real process death when it crashes: it loses the content of
+    // its memory and on recovery it rebuilds its items from the log
+    public NodeConfig writeAheadLog(String directory){
+        walDirectory = directory;
+        return this;
+    }
+
+    public NodeConfig groupCommit(int size, int intervalMs){
+        groupCommitSize = size;
+        groupCommitIntervalMs = intervalMs;
+        return this;
+    }
+
+    // periodically write the items in a memory-mapped snapshot (<log directory>/<node name>.snapshot)
+    // and truncate the write-ahead log; it requires the write-ahead log
+    public NodeConfig checkpoint(int intervalMs, int logRecords){
+        checkpointIntervalMs = intervalMs;
+        checkpointLogRecords = logRecords;
+        return this;
+    }
+
+    // place every node in tokensPerNode positions of the ring, derived from the key of the node (with the
+    // RAW partitioner the first one is the key itself). The items of a node are spread over many small arcs, so the load is
+    // more balanced and a join or a leave moves small slices from/to many peers
+    public NodeConfig virtualNodes(int _tokensPerNode){
+        tokensPerNode = _tokensPerNode;
+        return this;
+    }
+
+    // place the keys on the ring by their MurmurHash3 token instead of their value: sequential or skewed
+    // keys are spread evenly over the nodes
+    public NodeConfig partitioner(Partitioner _partitioner){
+        partitioner = _partitioner;
+        return this;
+    }
+
+    // sample the accesses of the node to its items and move a lightly loaded peer next to the hot
+    // arcs of the node when the node stays overloaded (see Node.onRebalance)
+    public NodeConfig rebalance(int intervalMs, double overloadFactor, int windows){
+        rebalanceIntervalMs = intervalMs;
+        rebalanceOverloadFactor = overloadFactor;
+        rebalanceWindows = windows;
+        return this;
+    }
+
+    // digest reads: a single replica of a get returns the whole item, the other ones only its version.
+    // The value is requested to another replica only if it announces a newer version
+    public NodeConfig digestReads(boolean enabled){
+        digestReads = enabled;
+        return this;
+    }
+
+    // hedged reads: a get asks first only the replicas needed to reach R, chosen by their average latency,
+    // and it asks the other replicas only if the quorum is not reached within the given percentile of the
+    // latencies of the last reads (at least minDelayMs)
+    public NodeConfig hedgedReads(double percentile, int minDelayMs){
+        hedgePercentile = percentile;
+        hedgeMinDelayMs = minDelayMs;
+        return this;
+    }
+
+    // sloppy quorum: when some replicas of an update do not answer within timeoutMs, the coordinator asks
+    // the following nodes of the ring, which keep the item as a hint for the missing replica and hand it
+    // over when the replica recovers (see Node.onHintTimeout)
+    public NodeConfig sloppyQuorum(int timeoutMs){
+        sloppyQuorumTimeoutMs = timeoutMs;
+        return this;
+    }
+
+    public NodeConfig writeProtocol(WriteProtocol _writeProtocol){
+        writeProtocol = _writeProtocol;
+        return this;
+    }
+
+    // after the R-th answer of a get, send the newest version of the item to the replicas which have answered
+    // with an older one. With windowMs > 0 the coordinator also collects the answers which arrive within
+    // windowMs from the reply, and at the end of the window it repairs them and the replicas which have not answered
+    public NodeConfig readRepair(ReadRepair mode, int windowMs){
+        readRepair = mode;
+        readRepairWindowMs = windowMs;
+        return this;
+    }
+
+    // anti-entropy: the node keeps a hash tree of its items (MerkleTree) and periodically compares the arcs it
+    // shares with a random replica peer; only the items of the buckets whose hashes differ are exchanged
+    public NodeConfig antiEntropy(int intervalMs){
+        antiEntropyIntervalMs = intervalMs;
+        return this;
+    }
+
+    // create the item store selected by the configuration
+    ItemStore createItemStore(String nodeName){
+        switch(storage){
+            case OFF_HEAP:
+                return new OffHeapItemStore(16, partitioner);
+            case LSM:
+                return new LsmItemStore(new File(lsmDirectory != null ? lsmDirectory : "lsm", nodeName), lsmMemtableItems, lsmCompactionSegments, partitioner);
+            case HEAP:
+            default:
+                return new OpenAddressingItemStore(16, partitioner);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package it.unitn.ds1;
+
+import java.util.Arrays;
+
+// Open-addressing ItemStore which keeps the values outside of the Java heap, in an OffHeapValueArena.
+// The table only holds the key, the version and the handle of the value in the arena, so the
+// garbage collector does not have to trace the values; an Item is materialized only when get()
+// is called to build a message.
+public class OffHeapItemStore extends AbstractOpenAddressingItemStore {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] handles;     // handles[slot] :: handle of the value in the arena (no initializer: see resizeValues)
+    private final OffHeapValueArena arena;
+
+    public OffHeapItemStore(){
+        this(DEFAULT_CAPACITY, Partitioner.RAW);
+    }
+
+    public OffHeapItemStore(int expectedItems){
+        this(expectedItems, Partitioner.RAW);
+    }
+
+    public OffHeapItemStore(int expectedItems, Partitioner partitioner){
+        super(expectedItems, partitioner);
+        this.arena = new OffHeapValueArena();
+    }
+
+    @Override
+    protected void resizeValues(int capacity, int[] destination){
+        long[] oldHandles = handles;
+        handles = new long[capacity];
+        for(int i = 0; i < destination.length; i++){
+            if(destination[i] >= 0){
+                handles[destination[i]] = oldHandles[i];
+            }
+        }
+    }
+
+    @Override
+    protected void storeValue(int slot, String value){
+        handles[slot] = arena.allocate(value);
+    }
+
+    @Override
+    protected String loadValue(int slot){
+        return arena.read(handles[slot]);
+    }
+
+    @Override
+    protected void releaseValue(int slot){
+        arena.free(handles[slot]);
+    }
+
+    @Override
+    protected void moveValue(int from, int to){
+        handles[to] = handles[from];
+    }
+
+    @Override
+    protected void clearValues(){
+        Arrays.fill(handles, OffHeapValueArena.NULL_HANDLE);
+        arena.reset();
+    }
+
+    @Override
+    public String toString(){
+        return super.toString() + " (off-heap: " + arena.getUsedBytes() + " bytes used, " + arena.getReservedBytes() + " bytes reserved)";
+    }
+}
@@ -0,0 +1,197 @@
+package it.unitn.ds1;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Arena which keeps item values outside of the Java heap, in direct ByteBuffers.
+// Memory is organized in slabs of SLAB_SIZE bytes; every slab is divided in chunks of the same
+// size class (16 bytes, 32 bytes, ..., MAX_CHUNK_SIZE). A value is encoded as its length followed
+// by its UTF-8 bytes and it is stored in the smallest chunk which fits. Freed chunks are pushed on
+// the free list of their size class and reused by the next allocations of the same class.
+// Values larger than MAX_CHUNK_SIZE get a dedicated slab which is dropped when they are freed.
+//
+// A value is identified by a handle: (slab index << 32) | offset of the chunk in the slab.
+// The arena is not thread safe: it is owned by the node actor.
+public class OffHeapValueArena {
+    public static final long NULL_HANDLE = -1;  // handle of a null value (nothing is allocated)
+
+    private static final int MIN_CHUNK_SHIFT = 4;                   // smallest chunk: 16 bytes
+    private static final int MAX_CHUNK_SHIFT = 12;                  // largest chunk: 4 KB
+    private static final int MAX_CHUNK_SIZE = 1 << MAX_CHUNK_SHIFT;
+    private static final int SIZE_CLASSES = MAX_CHUNK_SHIFT - MIN_CHUNK_SHIFT + 1;
+    private static final int SLAB_SIZE = 1 << 20;                   // 1 MB
+    private static final int HUGE = -1;                             // size class of a dedicated slab
+    private static final int LENGTH_BYTES = Integer.BYTES;
+
+    private ByteBuffer[] slabs;
+    private int[] slabClass;          // slabClass[i] :: size class of the chunks of slab i
+    private int slabCount;
+    private LongStack freeSlabs;      // indexes of the dropped dedicated slabs, reused by new slabs
+    private LongStack[] freeChunks;   // freeChunks[c] :: handles of the free chunks of size class c
+    private int[] currentSlab;        // currentSlab[c] :: slab from which new chunks of class c are carved, -1 if none
+    private int[] nextOffset;         // nextOffset[c] :: offset of the next chunk to carve from currentSlab[c]
+    private long reservedBytes;       // off-heap memory reserved by the slabs
+    private long usedBytes;           // memory of the chunks currently allocated
+
+    public OffHeapValueArena(){
+        reset();
+    }
+
+    // store the value and return its handle
+    public long allocate(String value){
+        if(value == null){
+            return NULL_HANDLE;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int needed = LENGTH_BYTES + bytes.length;
+        int sizeClass = sizeClassFor(needed);
+
+        long handle;
+        if(sizeClass == HUGE){
+            handle = handle(newSlab(needed, HUGE), 0);
+            usedBytes += needed;
+        } else {
+            handle = allocateChunk(sizeClass);
+            usedBytes += chunkSize(sizeClass);
+        }
+
+        ByteBuffer view = slabs[slabIndex(handle)].duplicate();
+        view.position(offset(handle));
+        view.putInt(bytes.length);
+        view.put(bytes);
+        return handle;
+    }
+
+    public String read(long handle){
+        if(handle == NULL_HANDLE){
+            return null;
+        }
+
+        ByteBuffer view = slabs[slabIndex(handle)].duplicate();
+        view.position(offset(handle));
+        byte[] bytes = new byte[view.getInt()];
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public void free(long handle){
+        if(handle == NULL_HANDLE){
+            return;
+        }
+
+        int slab = slabIndex(handle);
+        if(slabClass[slab] == HUGE){
+            usedBytes -= slabs[slab].capacity();
+            reservedBytes -= slabs[slab].capacity();
+            slabs[slab] = null;   // the direct buffer is released when it is garbage collected
+            freeSlabs.push(slab);
+        } else {
+            usedBytes -= chunkSize(slabClass[slab]);
+            freeChunks[slabClass[slab]].push(handle);
+        }
+    }
+
+    // drop all the slabs
+    public void reset(){
+        slabs = new ByteBuffer[16];
+        slabClass = new int[16];
+        slabCount = 0;
+        freeSlabs = new LongStack();
+        freeChunks = new LongStack[SIZE_CLASSES];
+        currentSlab = new int[SIZE_CLASSES];
+        nextOffset = new int[SIZE_CLASSES];
+        for(int c = 0; c < SIZE_CLASSES; c++){
+            freeChunks[c] = new LongStack();
+            currentSlab[c] = -1;
+        }
+        reservedBytes = 0;
+        usedBytes = 0;
+    }
+
+    public long getReservedBytes(){
+        return reservedBytes;
+    }
+
+    public long getUsedBytes(){
+        return usedBytes;
+    }
+
+    private long allocateChunk(int sizeClass){
+        if(!freeChunks[sizeClass].isEmpty()){
+            return freeChunks[sizeClass].pop();
+        }
+
+        // carve a new chunk from the current slab of the class, or from a new slab if it is full
+        if(currentSlab[sizeClass] < 0 || nextOffset[sizeClass] + chunkSize(sizeClass) > SLAB_SIZE){
+            currentSlab[sizeClass] = newSlab(SLAB_SIZE, sizeClass);
+            nextOffset[sizeClass] = 0;
+        }
+        long handle = handle(currentSlab[sizeClass], nextOffset[sizeClass]);
+        nextOffset[sizeClass] += chunkSize(sizeClass);
+        return handle;
+    }
+
+    private int newSlab(int capacity, int sizeClass){
+        int index;
+        if(!freeSlabs.isEmpty()){
+            index = (int) freeSlabs.pop();
+        } else {
+            if(slabCount == slabs.length){
+                slabs = Arrays.copyOf(slabs, slabCount * 2);
+                slabClass = Arrays.copyOf(slabClass, slabCount * 2);
+            }
+            index = slabCount++;
+        }
+        slabs[index] = ByteBuffer.allocateDirect(capacity);
+        slabClass[index] = sizeClass;
+        reservedBytes += capacity;
+        return index;
+    }
+
+    private static int sizeClassFor(int size){
+        if(size > MAX_CHUNK_SIZE){
+            return HUGE;
+        }
+        int shift = 32 - Integer.numberOfLeadingZeros(size - 1);  // ceil(log2(size))
+        return Math.max(shift, MIN_CHUNK_SHIFT) - MIN_CHUNK_SHIFT;
+    }
+
+    private static int chunkSize(int sizeClass){
+        return 1 << (sizeClass + MIN_CHUNK_SHIFT);
+    }
+
+    private static long handle(int slab, int offset){
+        return ((long) slab << 32) | offset;
+    }
+
+    private static int slabIndex(long handle){
+        return (int) (handle >>> 32);
+    }
+
+    private static int offset(long handle){
+        return (int) handle;
+    }
+
+    // growable stack of primitive longs, used for the free lists
+    private static class LongStack {
+        private long[] elements = new long[16];
+        private int size = 0;
+
+        void push(long e){
+            if(size == elements.length){
+                elements = Arrays.copyOf(elements, size * 2);
+            }
+            elements[size++] = e;
+        }
+
+        long pop(){
+            return elements[--size];
+        }
+
+        boolean isEmpty(){
+            return size == 0;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package it.unitn.ds1;
+
+import java.util.Arrays;
+
+// Open-addressing ItemStore which keeps the value references on the Java heap,
+// in a column parallel to the keys and the versions.
+public class OpenAddressingItemStore extends AbstractOpenAddressingItemStore {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private String[] values;
+
+    public OpenAddressingItemStore(){
+        this(DEFAULT_CAPACITY, Partitioner.RAW);
+    }
+
+    public OpenAddressingItemStore(int expectedItems){
+        this(expectedItems, Partitioner.RAW);
+    }
+
+    public OpenAddressingItemStore(int expectedItems, Partitioner partitioner){
+        super(expectedItems, partitioner);
+    }
+
+    @Override
+    protected void resizeValues(int capacity, int[] destination){
+        String[] oldValues = values;
+        values = new String[capacity];
+        for(int i = 0; i < destination.length; i++){
+            if(destination[i] >= 0){
+                values[destination[i]] = oldValues[i];
+            }
+        }
+    }
+
+    @Override
+    protected void storeValue(int slot, String value){
+        values[slot] = value;
+    }
+
+    @Override
+    protected String loadValue(int slot){
+        return values[slot];
+    }
+
+    @Override
+    protected void releaseValue(int slot){
+        values[slot] = null;  // let the value be garbage collected
+    }
+
+    @Override
+    protected void moveValue(int from, int to){
+        values[to] = values[from];
+        values[from] = null;
+    }
+
+    @Override
+    protected void clearValues(){
+        Arrays.fill(values, null);
+    }
+}
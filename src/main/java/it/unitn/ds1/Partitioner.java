@@ -0,0 +1,106 @@
+package it.unitn.ds1;
+
+// Placement of the keys on the ring. The ring is a space of 64-bit tokens: an item is stored by the
+// nodes which own the first tokens greater than the token of its key (see RoutingTable).
+//   RAW:     the token of an integer key is the key itself, as in the original design. Keys which are
+//            close to each other (e.g. the sequential keys of an ingest job) land on the same N nodes
+//   MURMUR3: the token is the 64-bit MurmurHash3 (x64, 128 bit, seed 0, lower half) of the 4 bytes of
+//            the key (little-endian), so any key distribution is spread evenly over the ring. Two keys
+//            may get the same token; the stores order their keys by (token, key) (see SortedKeyIndex)
+// Only integer keys are placed: Item.key is an int in every message, store, log and snapshot of the protocol,
+// so string or byte-array keys would have no path from the client to the ring.
+public enum Partitioner {
+    RAW(Integer.SIZE) {
+        @Override
+        public long token(int key){
+            return key;
+        }
+
+        // the first token is the key of the node; the others are spread over the integer keys
+        @Override
+        public long[] nodeTokens(int nodeKey, int tokensPerNode){
+            long[] tokens = new long[Math.max(tokensPerNode, 1)];
+            tokens[0] = nodeKey;
+            for(int i = 1; i < tokens.length; i++){
+                tokens[i] = (int) fmix64(nodeKey * 0x9E3779B97F4A7C15L + i);
+            }
+            return tokens;
+        }
+    },
+
+    MURMUR3(Long.SIZE) {
+        @Override
+        public long token(int key){
+            return murmur3(key & 0xFFFFFFFFL, Integer.BYTES);
+        }
+
+        // the tokens of the node are the hashes of (node key, token index)
+        @Override
+        public long[] nodeTokens(int nodeKey, int tokensPerNode){
+            long[] tokens = new long[Math.max(tokensPerNode, 1)];
+            for(int i = 0; i < tokens.length; i++){
+                tokens[i] = murmur3((nodeKey & 0xFFFFFFFFL) | ((long) i << 32), Long.BYTES);
+            }
+            return tokens;
+        }
+    };
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final int tokenBits;    // the tokens are signed integers of tokenBits bits
+
+    Partitioner(int tokenBits){
+        this.tokenBits = tokenBits;
+    }
+
+    public int tokenBits(){
+        return tokenBits;
+    }
+
+    public long minToken(){
+        return tokenBits == Long.SIZE ? Long.MIN_VALUE : -(1L << (tokenBits - 1));
+    }
+
+    public long maxToken(){
+        return ~minToken();
+    }
+
+    // token of an integer key
+    public abstract long token(int key);
+
+    // positions of a node on the ring; every node computes the same tokens for the same key
+    public abstract long[] nodeTokens(int nodeKey, int tokensPerNode);
+
+    // MurmurHash3_x64_128 of at most 8 bytes given as a little-endian long, lower 64 bits
+    static long murmur3(long bytes, int length){
+        long h1 = length > 0 ? mixK1(bytes) : 0;
+        return finish(h1, 0, length);
+    }
+
+    private static long mixK1(long k1){
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long finish(long h1, long h2, int length){
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        return h1;
+    }
+
+    private static long fmix64(long k){
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -1,6 +1,14 @@
 package it.unitn.ds1;
 
 import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
 
 enum Type { GET, UPDATE }
 
@@ -8,15 +16,41 @@ public class Request {
     ActorRef client;        // client that request the operation
     Item item;              // Item relative to the request
     String clientName;      // name of the client that made the request
+    long requestId;         // id of the request given by the coordinator, unique in the ring
+    long clientRequestId;   // id of the request given by the client, returned in the result
     int operationCounter;   // number of replies relative to the request
     Type type;              // type of operation
+    Set<ActorRef> responders;           // nodes which have answered the request (the coordinator excluded)
+    Set<ActorRef> refusals;             // nodes which have refused the request because the item is locked (Busy, Locked), the coordinator included
+    List<Item> siblings;                // get: concurrent versions of the item returned by the replicas (VECTOR_CLOCK)
+    Map<ActorRef, Integer> hintedNodes; // sloppy quorum: hintedNodes[node] :: key of the replica for which the node stands in
+    Map<ActorRef, Long> sentAt;         // sentAt[node] :: System.nanoTime() at which the request has been sent to the node
+    long digestVersion;                 // get: highest version announced by a digest read, -1 if none
+    Map<ActorRef, Long> replicaVersions;    // get: replicaVersions[node] :: version of the item returned by the node (read repair)
+    Set<ActorRef> pendingRepairs;       // get: replicas whose ack of the read repair is awaited before the reply (ReadRepair.SYNC)
+    Long expectedVersion;               // update: version the item must have for the update to be applied, null if the update is unconditional
+    List<Request> coalesced;            // update: queued updates of the same item whose value this request writes (see Node.writeQueues)
+    BatchRequest batch;                 // multi get or update the request is part of, null if it is a single request
+    List<Cancellable> timers;           // scheduled messages of the request (timeout, hedge, hint), cancelled when it completes
 
-    public Request(ActorRef _client, Item _item, Type _type, String _clientName){
+    public Request(ActorRef _client, Item _item, Type _type, String _clientName, long _requestId, long _clientRequestId){
         client = _client;
         item = _item;
         type = _type;
         clientName = _clientName;
+        requestId = _requestId;
+        clientRequestId = _clientRequestId;
         operationCounter = 0;
+        digestVersion = -1;
+        responders = new HashSet<>();
+        refusals = new HashSet<>();
+        pendingRepairs = new HashSet<>();
+        hintedNodes = new HashMap<>();
+        siblings = new ArrayList<>();
+        replicaVersions = new HashMap<>();
+        sentAt = new HashMap<>();
+        timers = new ArrayList<>();
+        coalesced = new ArrayList<>();
     }
 
     public void setItemValue(Item _item){
@@ -31,6 +65,14 @@ public class Request {
         this.operationCounter = operationCounter;
     }
 
+    public long getDigestVersion() {
+        return digestVersion;
+    }
+
+    public void setDigestVersion(long digestVersion) {
+        this.digestVersion = digestVersion;
+    }
+
     public ActorRef getClient(){
         return client;
     }
@@ -39,7 +81,83 @@ public class Request {
         return item;
     }
 
+    public String getClientName(){
+        return clientName;
+    }
+
+    public long getRequestId(){
+        return requestId;
+    }
+
+    public long getClientRequestId(){
+        return clientRequestId;
+    }
+
     public Type getType(){
         return type;
     }
+
+    public Set<ActorRef> getResponders(){
+        return responders;
+    }
+
+    public List<Item> getSiblings(){
+        return siblings;
+    }
+
+    public Set<ActorRef> getRefusals(){
+        return refusals;
+    }
+
+    public Map<ActorRef, Integer> getHintedNodes(){
+        return hintedNodes;
+    }
+
+    public Map<ActorRef, Long> getSentAt(){
+        return sentAt;
+    }
+
+    public Map<ActorRef, Long> getReplicaVersions(){
+        return replicaVersions;
+    }
+
+    public Set<ActorRef> getPendingRepairs(){
+        return pendingRepairs;
+    }
+
+    public Long getExpectedVersion(){
+        return expectedVersion;
+    }
+
+    public void setExpectedVersion(Long expectedVersion){
+        this.expectedVersion = expectedVersion;
+    }
+
+    public List<Request> getCoalesced(){
+        return coalesced;
+    }
+
+    public BatchRequest getBatch(){
+        return batch;
+    }
+
+    public void setBatch(BatchRequest batch){
+        this.batch = batch;
+    }
+
+    public void addTimer(Cancellable timer){
+        timers.add(timer);
+    }
+
+    // cancel the scheduled messages which have not been delivered yet; return how many have been cancelled
+    public int cancelTimers(){
+        int cancelled = 0;
+        for(Cancellable timer : timers){
+            if(timer.cancel()){
+                cancelled++;
+            }
+        }
+        timers.clear();
+        return cancelled;
+    }
 }
@@ -0,0 +1,240 @@
+package it.unitn.ds1;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// Snapshot of the ring used to route the requests of the clients.
+// The ring is a space of 64-bit tokens. Every node is placed on the ring in one or more positions
+// (Partitioner.nodeTokens) and every key is mapped to a token (Partitioner.token). An item is stored
+// by the first N distinct nodes met going clockwise from the token t of its key, i.e. by the owners
+// of the first tokens greater than t (the ring wraps around): all the tokens between two consecutive
+// node tokens share the same N nodes, hence the table precomputes the preference list of every arc
+// when it is built and a lookup is a single binary search on the sorted tokens.
+// The table is immutable: the node builds a new one every time its peers change.
+public class RoutingTable {
+    private static final int[] EMPTY = new int[0];
+
+    private final Partitioner partitioner;
+    private final long[] tokens;              // sorted tokens of the nodes
+    private final int[] owners;               // owners[i]: key of the node which owns tokens[i]
+    private final int[][] preferenceLists;    // preferenceLists[i]: nodes responsible for the tokens in [tokens[i - 1], tokens[i])
+
+    public RoutingTable(Collection<Integer> nodeKeys, int n){
+        this(nodeKeys, n, 1, Partitioner.RAW);
+    }
+
+    public RoutingTable(Collection<Integer> nodeKeys, int n, int tokensPerNode, Partitioner partitioner){
+        this.partitioner = partitioner;
+
+        // if two nodes get the same token, the node with the lowest key keeps it
+        TreeMap<Long, Integer> ring = new TreeMap<>();
+        for(int nodeKey : nodeKeys){
+            for(long token : partitioner.nodeTokens(nodeKey, tokensPerNode)){
+                ring.merge(token, nodeKey, Math::min);
+            }
+        }
+        this.tokens = new long[ring.size()];
+        this.owners = new int[ring.size()];
+        int i = 0;
+        for(Long token : ring.keySet()){
+            this.tokens[i] = token;
+            this.owners[i] = ring.get(token);
+            i++;
+        }
+
+        // the preference list of arc i starts at the owner of tokens[i] and goes on clockwise,
+        // skipping the nodes which are already in the list
+        int replicas = Math.min(n, nodeKeys.size());
+        this.preferenceLists = new int[this.tokens.length][];
+        for(i = 0; i < this.tokens.length; i++){
+            int[] preferenceList = new int[replicas];
+            int size = 0;
+            for(int j = 0; j < this.tokens.length && size < replicas; j++){
+                int owner = this.owners[(i + j) % this.tokens.length];
+                if(!contains(preferenceList, size, owner)){
+                    preferenceList[size++] = owner;
+                }
+            }
+            this.preferenceLists[i] = size == replicas ? preferenceList : Arrays.copyOf(preferenceList, size);
+        }
+    }
+
+    // return the keys of the nodes responsible for the item, starting from the first one clockwise.
+    // The array is shared by all the lookups and it must not be modified
+    public int[] getPreferenceList(int itemKey){
+        return getPreferenceListOfToken(partitioner.token(itemKey));
+    }
+
+    public int[] getPreferenceListOfToken(long token){
+        if(tokens.length == 0){
+            return EMPTY;
+        }
+        return preferenceLists[ceilingIndex(token)];
+    }
+
+    // first count distinct nodes met going clockwise from the token of the item: the preference list
+    // followed by the nodes which can stand in for its members (sloppy quorum)
+    public int[] getExtendedPreferenceList(int itemKey, int count){
+        if(tokens.length == 0){
+            return EMPTY;
+        }
+        int start = ceilingIndex(partitioner.token(itemKey));
+        int[] list = new int[count];
+        int size = 0;
+        for(int j = 0; j < tokens.length && size < count; j++){
+            int owner = owners[(start + j) % tokens.length];
+            if(!contains(list, size, owner)){
+                list[size++] = owner;
+            }
+        }
+        return size == count ? list : Arrays.copyOf(list, size);
+    }
+
+    public boolean isResponsible(int nodeKey, int itemKey){
+        return contains(getPreferenceList(itemKey), nodeKey);
+    }
+
+    // arcs of the ring for which the node is responsible (responsible == true) or not responsible
+    // (responsible == false). The arcs are returned as pairs of tokens [from, to) in a flat array
+    // {from0, to0, from1, to1, ...}; an arc with from == to is the whole ring
+    public long[] getArcs(int nodeKey, boolean responsible){
+        return collectArcs(this, this, nodeKey, responsible, responsible);
+    }
+
+    // arcs of the ring for which the node is responsible in the table "after" but not in the
+    // table "before" (same format of getArcs). getArcsGained(after, before, nodeKey) returns the
+    // arcs the node loses
+    public static long[] getArcsGained(RoutingTable before, RoutingTable after, int nodeKey){
+        return collectArcs(before, after, nodeKey, false, true);
+    }
+
+    // arcs of the ring for which both nodes are responsible (same format of getArcs)
+    public long[] getSharedArcs(int nodeKey, int peerKey){
+        if(tokens.length == 0){
+            return new long[0];
+        }
+        long[] arcs = new long[2 * tokens.length];
+        int count = 0;
+        for(int i = 0; i < tokens.length; i++){
+            if(contains(preferenceLists[i], nodeKey) && contains(preferenceLists[i], peerKey)){
+                long from = tokens[(i + tokens.length - 1) % tokens.length];
+                if(count > 0 && arcs[count - 1] == from){  // contiguous to the previous arc
+                    arcs[count - 1] = tokens[i];
+                } else {
+                    arcs[count++] = from;
+                    arcs[count++] = tokens[i];
+                }
+            }
+        }
+        // the last arc may continue in the first one
+        if(count > 2 && arcs[count - 1] == arcs[0]){
+            arcs[0] = arcs[count - 2];
+            count -= 2;
+        }
+        return Arrays.copyOf(arcs, count);
+    }
+
+    // split the interval of tokens [low, high] (low <= high) in parts in which the preference list does not
+    // change. The parts are returned as pairs of tokens [low, high] (bounds included) in a flat array
+    // {low0, high0, low1, high1, ...}, in token order
+    public long[] splitRange(long low, long high){
+        long[] parts = new long[2 * (tokens.length + 1)];
+        int count = 0;
+        long start = low;
+        for(long token : tokens){
+            if(token > low && token <= high){
+                parts[count++] = start;
+                parts[count++] = token - 1;
+                start = token;
+            }
+        }
+        parts[count++] = start;
+        parts[count++] = high;
+        return Arrays.copyOf(parts, count);
+    }
+
+    // nodes which share at least an arc of the ring with the node
+    public Set<Integer> getReplicaPeers(int nodeKey){
+        Set<Integer> replicaPeers = new TreeSet<>();
+        for(int[] preferenceList : preferenceLists){
+            if(contains(preferenceList, nodeKey)){
+                for(int node : preferenceList){
+                    if(node != nodeKey){
+                        replicaPeers.add(node);
+                    }
+                }
+            }
+        }
+        return replicaPeers;
+    }
+
+    public int size(){
+        return tokens.length;
+    }
+
+    public static boolean contains(int[] preferenceList, int nodeKey){
+        return contains(preferenceList, preferenceList.length, nodeKey);
+    }
+
+    private static boolean contains(int[] preferenceList, int size, int nodeKey){
+        for(int i = 0; i < size; i++){
+            if(preferenceList[i] == nodeKey){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // the tokens of both tables split the ring in arcs in which the preference lists of both tables
+    // do not change: select the arcs where the responsibility of the node is the requested one
+    private static long[] collectArcs(RoutingTable a, RoutingTable b, int nodeKey, boolean inA, boolean inB){
+        long[] bounds = new long[a.tokens.length + b.tokens.length];
+        System.arraycopy(a.tokens, 0, bounds, 0, a.tokens.length);
+        System.arraycopy(b.tokens, 0, bounds, a.tokens.length, b.tokens.length);
+        Arrays.sort(bounds);
+        int m = 0;
+        for(int i = 0; i < bounds.length; i++){
+            if(m == 0 || bounds[i] != bounds[m - 1]){
+                bounds[m++] = bounds[i];
+            }
+        }
+
+        long[] arcs = new long[2 * m];
+        int count = 0;
+        for(int i = 0; i < m; i++){
+            long from = bounds[i];
+            long to = bounds[(i + 1) % m];
+            if(contains(a.getPreferenceListOfToken(from), nodeKey) == inA && contains(b.getPreferenceListOfToken(from), nodeKey) == inB){
+                if(count > 0 && arcs[count - 1] == from){  // contiguous to the previous arc
+                    arcs[count - 1] = to;
+                } else {
+                    arcs[count++] = from;
+                    arcs[count++] = to;
+                }
+            }
+        }
+        return Arrays.copyOf(arcs, count);
+    }
+
+    // index of the first node token greater than token; 0 if there is none (the ring wraps around)
+    private int ceilingIndex(long token){
+        int lo = 0, hi = tokens.length;
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(tokens[mid] > token){
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo == tokens.length ? 0 : lo;
+    }
+
+    @Override
+    public String toString(){
+        return "RoutingTable" + Arrays.toString(tokens);
+    }
+}
@@ -0,0 +1,108 @@
+package it.unitn.ds1;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+/*
+    Microbenchmark of the routing of a request: it compares the linear scan of the peers which was
+    performed by Node.getResponsibleNode with the lookup in the RoutingTable, for rings with
+    thousands of peers. It also reports the time needed to rebuild the table, which is paid
+    once per membership change.
+
+    USAGE: gradle benchmarkRoutingTable [--args="<replication factor N> <number of lookups>"]
+ */
+public class RoutingTableBenchmark {
+  private static final int ROUNDS = 5;  // the first round is a warm-up and it is not reported
+  private static final int[] PEERS = {1_000, 4_000, 16_000};
+  private static long sink;
+
+  public static void main(String[] args) {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+    int nLookups = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+    Random rnd = new Random(42);
+    int[] lookups = new int[nLookups];
+    for (int i = 0; i < nLookups; i++) {
+      lookups[i] = rnd.nextInt(Integer.MAX_VALUE);
+    }
+
+    System.out.println("N: " + n + ", lookups: " + nLookups);
+    for (int nPeers : PEERS) {
+      Map<Integer, Object> peers = new TreeMap<>();
+      while (peers.size() < nPeers) {
+        peers.put(rnd.nextInt(Integer.MAX_VALUE), Boolean.TRUE);
+      }
+
+      // the linear scan is much slower: it performs fewer lookups, scaled in the report
+      int scanLookups = Math.max(1, nLookups / (nPeers / 100));
+
+      for (int round = 0; round < ROUNDS; round++) {
+        long start = System.nanoTime();
+        RoutingTable table = new RoutingTable(peers.keySet(), n);
+        long build = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long tableSum = 0;
+        for (int k : lookups) {
+          tableSum += table.getPreferenceList(k)[0];
+        }
+        long tableLookup = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long scanSum = 0;
+        for (int i = 0; i < scanLookups; i++) {
+          scanSum += linearScan(lookups[i], peers, n).size();
+        }
+        long scanLookup = System.nanoTime() - start;
+
+        // both approaches must return the same nodes
+        for (int i = 0; i < 1000; i++) {
+          Set<Integer> expected = linearScan(lookups[i], peers, n);
+          int[] preferenceList = table.getPreferenceList(lookups[i]);
+          if (expected.size() != preferenceList.length) {
+            throw new IllegalStateException("different preference lists for key " + lookups[i]);
+          }
+          for (int node : preferenceList) {
+            if (!expected.contains(node)) {
+              throw new IllegalStateException("different preference lists for key " + lookups[i]);
+            }
+          }
+        }
+
+        sink += scanSum + tableSum;  // keep the lookups from being optimized away
+        if (round > 0) {
+          System.out.printf("peers %6d   round %d   linear scan %10.1f ns/op   routing table %6.1f ns/op   rebuild %8.3f ms%n",
+                  nPeers, round, (double) scanLookup / scanLookups, (double) tableLookup / nLookups, build / 1e6);
+        }
+      }
+    }
+  }
+
+  // the lookup previously performed by Node.getResponsibleNode
+  private static Set<Integer> linearScan(int key, Map<Integer, Object> peers, int n) {
+    Set<Integer> responsibleNode = new HashSet<>();
+    for (Map.Entry<Integer, Object> entry : peers.entrySet()) {
+      if (n > 0 && key < entry.getKey()) {
+        responsibleNode.add(entry.getKey());
+        n--;
+      }
+      if (n <= 0) {
+        break;
+      }
+    }
+    if (n > 0) {
+      for (Map.Entry<Integer, Object> entry : peers.entrySet()) {
+        if (n > 0) {
+          responsibleNode.add(entry.getKey());
+          n--;
+        } else {
+          break;
+        }
+      }
+    }
+    return responsibleNode;
+  }
+}
@@ -0,0 +1,161 @@
+package it.unitn.ds1;
+
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+
+// State of a scan on its coordinator (Message.ScanRequest).
+// The token range of the scan is split in parts, the intervals of tokens in which the preference list does not
+// change (RoutingTable.splitRange). The parts are read one at a time from R of their replicas, only when the
+// client has credit for a new page and the buffer cannot fill it, so neither the coordinator nor the client
+// ever keep more than a few pages of items.
+// With RAW the parts are in key order. With MURMUR3 they are not (the keys are hashed), so the first "limit"
+// keys of the range can be in any part: all the parts are read and merged in key order, keeping only the
+// "limit" smallest keys, and the items enter the buffer when the last part has been read
+public class ScanCursor {
+    private final ActorRef client;        // client that request the operation
+    private final long clientRequestId;   // id of the request given by the client, returned in the pages
+    private final int fromKey;
+    private final int toKey;
+    private final long[] parts;           // {low0, high0, low1, high1, ...}: tokens of the parts (bounds included)
+    private int nextPart;                 // index of the next part to read
+    private int remaining;                // items which can still enter the buffer (limit of the scan)
+    private int credits;                  // pages the client is ready to receive
+    private final Deque<Item> buffer;     // items read and not sent yet, in key order within a part
+    private Map<Integer, Item> partItems; // newest version of every item of the part being read, null if none is being read
+    private final TreeMap<Integer, Item> merged;  // smallest keys of the parts read so far, null if the parts are in key order
+    private int replies;                  // replicas which have answered for the part being read
+    private int expectedReplies;          // replicas asked for the part being read
+    private Cancellable timer;            // timeout of the scan, rescheduled at every step
+    private int step;                     // steps of the scan, to recognize the timeout of the current one
+
+    public ScanCursor(ActorRef client, long clientRequestId, int fromKey, int toKey, long[] parts, int limit, int credits, boolean keyOrderedParts){
+        this.client = client;
+        this.clientRequestId = clientRequestId;
+        this.fromKey = fromKey;
+        this.toKey = toKey;
+        this.parts = parts;
+        this.remaining = limit;
+        this.credits = credits;
+        this.buffer = new ArrayDeque<>();
+        this.merged = keyOrderedParts ? null : new TreeMap<>();
+    }
+
+    // start reading the next part; return its index
+    public int startPart(int expectedReplies){
+        this.partItems = new TreeMap<>();
+        this.replies = 0;
+        this.expectedReplies = expectedReplies;
+        return nextPart++;
+    }
+
+    // the items of a replica for the part being read: keep the newest version of every key.
+    // Return true if all the replicas asked have answered
+    public boolean addReplies(Iterable<Item> items){
+        for(Item item : items){
+            Item known = partItems.get(item.getKey());
+            if(known == null || known.getVersion() < item.getVersion()){
+                partItems.put(item.getKey(), item);
+            }
+        }
+        return ++replies >= expectedReplies;
+    }
+
+    // the part has been read: move its items to the buffer, up to the limit of the scan. If the parts are not
+    // in key order, merge them and fill the buffer after the last one
+    public void completePart(){
+        if(merged != null){
+            merged.putAll(partItems);
+            while(merged.size() > remaining){
+                merged.pollLastEntry();
+            }
+            partItems = null;
+            if(nextPart * 2 >= parts.length){
+                buffer.addAll(merged.values());
+                remaining -= merged.size();
+                merged.clear();
+            }
+            return;
+        }
+        for(Item item : partItems.values()){
+            if(remaining == 0){
+                break;
+            }
+            buffer.add(item);
+            remaining--;
+        }
+        partItems = null;
+    }
+
+    public boolean isReadingPart(){
+        return partItems != null;
+    }
+
+    // no more items will enter the buffer
+    public boolean isExhausted(){
+        return !isReadingPart() && (remaining == 0 || nextPart * 2 >= parts.length);
+    }
+
+    public int getNextPart(){
+        return nextPart;
+    }
+
+    public long partLow(int part){
+        return parts[2 * part];
+    }
+
+    public long partHigh(int part){
+        return parts[2 * part + 1];
+    }
+
+    public int nextStep(){
+        return ++step;
+    }
+
+    public int getStep(){
+        return step;
+    }
+
+    public void setTimer(Cancellable timer){
+        if(this.timer != null){
+            this.timer.cancel();
+        }
+        this.timer = timer;
+    }
+
+    public ActorRef getClient(){
+        return client;
+    }
+
+    public long getClientRequestId(){
+        return clientRequestId;
+    }
+
+    public int getFromKey(){
+        return fromKey;
+    }
+
+    public int getToKey(){
+        return toKey;
+    }
+
+    public int getRemaining(){
+        return remaining;
+    }
+
+    public int getCredits(){
+        return credits;
+    }
+
+    public void setCredits(int credits){
+        this.credits = credits;
+    }
+
+    public Deque<Item> getBuffer(){
+        return buffer;
+    }
+}
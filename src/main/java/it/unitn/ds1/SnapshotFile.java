@@ -0,0 +1,115 @@
+package it.unitn.ds1;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Checkpoint of the items of a node in a memory-mapped file with a fixed layout:
+//   header: [magic][format][number of items]
+//   index:  one fixed-size entry per item, sorted by key: [key][version][value offset][value length, -1 if null]
+//   values: the UTF-8 bytes of the values, the offsets are relative to the beginning of the file
+// The snapshot is written in a temporary file which is then renamed, so a crash during a checkpoint
+// leaves the previous snapshot untouched.
+public class SnapshotFile {
+    private static final int MAGIC = 0x44533153;  // "DS1S"
+    private static final int FORMAT = 2;  // 2: 64-bit versions
+    private static final int HEADER_BYTES = 3 * Integer.BYTES;
+    private static final int ENTRY_BYTES = 3 * Integer.BYTES + Long.BYTES;
+    private static final int NULL_VALUE = -1;
+
+    private final File file;
+
+    public SnapshotFile(File file){
+        this.file = file;
+    }
+
+    public boolean exists(){
+        return file.exists();
+    }
+
+    // write the items of the store in the snapshot file
+    public void write(ItemStore store) throws IOException {
+        int[] keys = store.keys();
+        Arrays.sort(keys);
+        Item[] items = new Item[keys.length];
+        byte[][] values = new byte[keys.length][];
+        long size = HEADER_BYTES + (long) ENTRY_BYTES * keys.length;
+        for(int i = 0; i < keys.length; i++){
+            items[i] = store.get(keys[i]);
+            if(items[i].getValue() != null){
+                values[i] = items[i].getValue().getBytes(StandardCharsets.UTF_8);
+                size += values[i].length;
+            }
+        }
+        if(size > Integer.MAX_VALUE){
+            throw new IOException("snapshot larger than 2 GB");
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            map.putInt(MAGIC);
+            map.putInt(FORMAT);
+            map.putInt(keys.length);
+
+            int valueOffset = HEADER_BYTES + ENTRY_BYTES * keys.length;
+            for(int i = 0; i < keys.length; i++){
+                map.putInt(keys[i]);
+                map.putLong(items[i].getVersion());
+                map.putInt(valueOffset);
+                map.putInt(values[i] == null ? NULL_VALUE : values[i].length);
+                valueOffset += values[i] == null ? 0 : values[i].length;
+            }
+            for(byte[] value : values){
+                if(value != null){
+                    map.put(value);
+                }
+            }
+            map.force();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // map the snapshot and load its items in the store; return the number of items loaded
+    public int load(ItemStore store) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(map.getInt() != MAGIC || map.getInt() != FORMAT){
+                throw new IOException("not a snapshot file: " + file);
+            }
+            int count = map.getInt();
+
+            ByteBuffer values = map.duplicate();
+            for(int i = 0; i < count; i++){
+                int key = map.getInt();
+                long version = map.getLong();
+                int valueOffset = map.getInt();
+                int valueLength = map.getInt();
+
+                String value = null;
+                if(valueLength != NULL_VALUE){
+                    byte[] bytes = new byte[valueLength];
+                    values.position(valueOffset);
+                    values.get(bytes);
+                    value = new String(bytes, StandardCharsets.UTF_8);
+                }
+                if(store.getVersion(key) <= version){
+                    store.put(new Item(key, value, version));
+                }
+            }
+            return count;
+        }
+    }
+
+    public void delete() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+}
@@ -0,0 +1,183 @@
+package it.unitn.ds1;
+
+import java.util.Arrays;
+
+// Set of primitive int keys sorted by their 64-bit token on the ring (see Partitioner), used by the item
+// stores to answer range queries. Two keys may share a token (a hash collision): the entries are ordered
+// by (token, key), so both are kept and a range query returns them next to each other.
+// The entries are kept in a list of sorted blocks of at most BLOCK_CAPACITY (token, key) pairs: an
+// insertion or a removal shifts the entries of a single block, and a range query finds its first
+// entry with two binary searches and then reads the following entries in order.
+public class SortedKeyIndex {
+    private static final int BLOCK_CAPACITY = 256;
+    private static final int[] EMPTY = new int[0];
+
+    private long[][] tokens;    // tokens[i] contains blockSizes[i] tokens, all lower than or equal to the tokens of tokens[i + 1]
+    private int[][] keys;       // keys[i][j] :: key whose token is tokens[i][j]
+    private int[] blockSizes;
+    private int blockCount;
+    private int size;
+
+    public SortedKeyIndex(){
+        clear();
+    }
+
+    // add the key with the given token; return false if it was already in the index
+    public boolean add(long token, int key){
+        if(blockCount == 0){
+            insertBlock(0, new long[BLOCK_CAPACITY], new int[BLOCK_CAPACITY], 0);
+        }
+        int b = findBlock(token, key);
+        int pos = search(b, token, key);
+        if(pos >= 0){
+            return false;
+        }
+        pos = -pos - 1;
+
+        // split a full block in two halves
+        if(blockSizes[b] == BLOCK_CAPACITY){
+            int half = BLOCK_CAPACITY / 2;
+            long[] upperTokens = new long[BLOCK_CAPACITY];
+            int[] upperKeys = new int[BLOCK_CAPACITY];
+            System.arraycopy(tokens[b], half, upperTokens, 0, BLOCK_CAPACITY - half);
+            System.arraycopy(keys[b], half, upperKeys, 0, BLOCK_CAPACITY - half);
+            blockSizes[b] = half;
+            insertBlock(b + 1, upperTokens, upperKeys, BLOCK_CAPACITY - half);
+            if(pos > half){
+                b++;
+                pos -= half;
+            }
+        }
+
+        int moved = blockSizes[b] - pos;
+        System.arraycopy(tokens[b], pos, tokens[b], pos + 1, moved);
+        System.arraycopy(keys[b], pos, keys[b], pos + 1, moved);
+        tokens[b][pos] = token;
+        keys[b][pos] = key;
+        blockSizes[b]++;
+        size++;
+        return true;
+    }
+
+    // remove the key with the given token; return false if it was not in the index
+    public boolean remove(long token, int key){
+        if(blockCount == 0){
+            return false;
+        }
+        int b = findBlock(token, key);
+        int pos = search(b, token, key);
+        if(pos < 0){
+            return false;
+        }
+
+        int moved = blockSizes[b] - pos - 1;
+        System.arraycopy(tokens[b], pos + 1, tokens[b], pos, moved);
+        System.arraycopy(keys[b], pos + 1, keys[b], pos, moved);
+        if(--blockSizes[b] == 0){
+            removeBlock(b);
+        }
+        size--;
+        return true;
+    }
+
+    // return the keys whose token t is such that low <= t <= high, in token order
+    public int[] range(long low, long high){
+        if(low > high || blockCount == 0){
+            return EMPTY;
+        }
+        // (low, Integer.MIN_VALUE) precedes every entry with token low
+        int b = findBlock(low, Integer.MIN_VALUE);
+        int pos = search(b, low, Integer.MIN_VALUE);
+        if(pos < 0){
+            pos = -pos - 1;
+        }
+
+        int[] result = new int[16];
+        int count = 0;
+        for(; b < blockCount; b++, pos = 0){
+            for(; pos < blockSizes[b]; pos++){
+                if(tokens[b][pos] > high){
+                    return Arrays.copyOf(result, count);
+                }
+                if(count == result.length){
+                    result = Arrays.copyOf(result, count << 1);
+                }
+                result[count++] = keys[b][pos];
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public void clear(){
+        tokens = new long[4][];
+        keys = new int[4][];
+        blockSizes = new int[4];
+        blockCount = 0;
+        size = 0;
+    }
+
+    // return the last block whose first entry is <= (token, key), the first block if there is none
+    private int findBlock(long token, int key){
+        int lo = 0, hi = blockCount - 1, block = 0;
+        while(lo <= hi){
+            int mid = (lo + hi) >>> 1;
+            if(blockSizes[mid] > 0 && compare(tokens[mid][0], keys[mid][0], token, key) <= 0){
+                block = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return block;
+    }
+
+    // position of (token, key) in block b; -(insertion point) - 1 if it is not there
+    private int search(int b, long token, int key){
+        int lo = 0, hi = blockSizes[b] - 1;
+        while(lo <= hi){
+            int mid = (lo + hi) >>> 1;
+            int c = compare(tokens[b][mid], keys[b][mid], token, key);
+            if(c < 0){
+                lo = mid + 1;
+            } else if(c > 0){
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -lo - 1;
+    }
+
+    private static int compare(long tokenA, int keyA, long tokenB, int keyB){
+        int c = Long.compare(tokenA, tokenB);
+        return c != 0 ? c : Integer.compare(keyA, keyB);
+    }
+
+    private void insertBlock(int index, long[] blockTokens, int[] blockKeys, int blockSize){
+        if(blockCount == tokens.length){
+            tokens = Arrays.copyOf(tokens, blockCount << 1);
+            keys = Arrays.copyOf(keys, blockCount << 1);
+            blockSizes = Arrays.copyOf(blockSizes, blockCount << 1);
+        }
+        System.arraycopy(tokens, index, tokens, index + 1, blockCount - index);
+        System.arraycopy(keys, index, keys, index + 1, blockCount - index);
+        System.arraycopy(blockSizes, index, blockSizes, index + 1, blockCount - index);
+        tokens[index] = blockTokens;
+        keys[index] = blockKeys;
+        blockSizes[index] = blockSize;
+        blockCount++;
+    }
+
+    private void removeBlock(int index){
+        System.arraycopy(tokens, index + 1, tokens, index, blockCount - index - 1);
+        System.arraycopy(keys, index + 1, keys, index, blockCount - index - 1);
+        System.arraycopy(blockSizes, index + 1, blockSizes, index, blockCount - index - 1);
+        blockCount--;
+        tokens[blockCount] = null;
+        keys[blockCount] = null;
+    }
+}
@@ -0,0 +1,77 @@
+package it.unitn.ds1;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Vector clock of a version of an item, used by the VECTOR_CLOCK write protocol.
+// For every coordinator which has written the item it counts the writes of that coordinator the version
+// descends from. A version descends from another one if all its counters are greater or equal; two
+// versions none of which descends from the other one have been written concurrently (siblings).
+// The clock is immutable: with() and merge() return new clocks.
+public class VectorClock implements Serializable {
+    private final TreeMap<Integer, Long> counters;  // counters[K] :: writes coordinated by the node with key K
+
+    public VectorClock(){
+        this.counters = new TreeMap<>();
+    }
+
+    private VectorClock(TreeMap<Integer, Long> counters){
+        this.counters = counters;
+    }
+
+    public long get(int nodeKey){
+        return counters.getOrDefault(nodeKey, 0L);
+    }
+
+    // copy of the clock with the counter of the node set to the given value
+    public VectorClock with(int nodeKey, long counter){
+        TreeMap<Integer, Long> copy = new TreeMap<>(counters);
+        copy.put(nodeKey, counter);
+        return new VectorClock(copy);
+    }
+
+    // the smallest clock which descends from both clocks
+    public VectorClock merge(VectorClock other){
+        TreeMap<Integer, Long> copy = new TreeMap<>(counters);
+        for(Map.Entry<Integer, Long> entry : other.counters.entrySet()){
+            copy.merge(entry.getKey(), entry.getValue(), Math::max);
+        }
+        return new VectorClock(copy);
+    }
+
+    // true if the version of this clock has seen all the writes of the other one (equal clocks included)
+    public boolean descends(VectorClock other){
+        for(Map.Entry<Integer, Long> entry : other.counters.entrySet()){
+            if(get(entry.getKey()) < entry.getValue()){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // total number of writes the version descends from: it grows along every chain of versions, so it is
+    // used as the integer version of the item by the rest of the node
+    public long sum(){
+        long sum = 0;
+        for(long counter : counters.values()){
+            sum += counter;
+        }
+        return sum;
+    }
+
+    @Override
+    public boolean equals(Object o){
+        return o instanceof VectorClock && counters.equals(((VectorClock) o).counters);
+    }
+
+    @Override
+    public int hashCode(){
+        return counters.hashCode();
+    }
+
+    @Override
+    public String toString(){
+        return counters.toString();
+    }
+}
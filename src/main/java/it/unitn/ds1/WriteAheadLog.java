@@ -0,0 +1,178 @@
+package it.unitn.ds1;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// Append-only log of the items written by a node.
+// Records are first accumulated in memory and then written and forced to disk together (group
+// commit): the node calls commit() when groupCommitSize records are pending and periodically,
+// so a single fsync covers many writes. Records which were not committed are lost if the process
+// dies, exactly like in a real deployment.
+//
+// Record layout: [payload length][key][version][value length, -1 if null][value bytes][CRC32 of the payload]
+public class WriteAheadLog {
+    private static final int HEADER_BYTES = Integer.BYTES;
+    private static final int TRAILER_BYTES = Integer.BYTES;
+    private static final int MIN_PAYLOAD_BYTES = 2 * Integer.BYTES + Long.BYTES;  // key, version and value length
+    private static final int NULL_VALUE = -1;
+    private static final int READ_BUFFER_BYTES = 1 << 16;
+
+    private final File file;
+    private final int groupCommitSize;
+    private final FileChannel channel;
+    private ByteBuffer pending;         // records which have not been committed yet
+    private int pendingRecords;
+    private long committedRecords;
+
+    public WriteAheadLog(File file, int groupCommitSize) throws IOException {
+        this.file = file;
+        this.groupCommitSize = groupCommitSize;
+        File parent = file.getAbsoluteFile().getParentFile();
+        if(parent != null && !parent.exists() && !parent.mkdirs()){
+            throw new IOException("cannot create the log directory " + parent);
+        }
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.channel.position(this.channel.size());
+        this.pending = ByteBuffer.allocate(4096);
+        this.pendingRecords = 0;
+        this.committedRecords = 0;
+    }
+
+    // append the record of the item; the log is committed if enough records are pending
+    public void append(Item item) throws IOException {
+        byte[] value = item.getValue() == null ? null : item.getValue().getBytes(StandardCharsets.UTF_8);
+        int payloadLength = MIN_PAYLOAD_BYTES + (value == null ? 0 : value.length);
+        ensurePendingCapacity(HEADER_BYTES + payloadLength + TRAILER_BYTES);
+
+        pending.putInt(payloadLength);
+        int payloadStart = pending.position();
+        pending.putInt(item.getKey());
+        pending.putLong(item.getVersion());
+        pending.putInt(value == null ? NULL_VALUE : value.length);
+        if(value != null){
+            pending.put(value);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(pending.array(), payloadStart, payloadLength);
+        pending.putInt((int) crc.getValue());
+
+        if(++pendingRecords >= groupCommitSize){
+            commit();
+        }
+    }
+
+    // write the pending records and force them to disk with a single fsync
+    public void commit() throws IOException {
+        if(pendingRecords == 0){
+            return;
+        }
+        pending.flip();
+        while(pending.hasRemaining()){
+            channel.write(pending);
+        }
+        channel.force(false);
+        pending.clear();
+        committedRecords += pendingRecords;
+        pendingRecords = 0;
+    }
+
+    // drop the records which have not been committed yet (they would be lost by a process death)
+    public void discardPending(){
+        pending.clear();
+        pendingRecords = 0;
+    }
+
+    // load the committed records in the store; for every key the record with the highest version wins.
+    // The log is read as a stream, one record at a time, so its size is not bounded by the heap.
+    // The log is cut at the first torn or corrupt record (partial write during a crash).
+    // Return the number of records read
+    public int replay(ItemStore store) throws IOException {
+        commit();
+        long size = channel.size();
+        channel.position(0);
+        DataInputStream log = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), READ_BUFFER_BYTES));
+
+        int records = 0;
+        long validEnd = 0;
+        byte[] payload = new byte[256];
+        while(size - validEnd >= HEADER_BYTES){
+            int payloadLength = log.readInt();
+            if(payloadLength < MIN_PAYLOAD_BYTES || size - validEnd - HEADER_BYTES < (long) payloadLength + TRAILER_BYTES){
+                break;
+            }
+            if(payload.length < payloadLength){
+                payload = new byte[Math.max(payloadLength, payload.length * 2)];
+            }
+            log.readFully(payload, 0, payloadLength);
+            int storedCrc = log.readInt();
+
+            // verify the record before decoding it: a corrupt length must not be used
+            CRC32 crc = new CRC32();
+            crc.update(payload, 0, payloadLength);
+            if(storedCrc != (int) crc.getValue()){
+                break;
+            }
+            ByteBuffer record = ByteBuffer.wrap(payload, 0, payloadLength);
+            int key = record.getInt();
+            long version = record.getLong();
+            int valueLength = record.getInt();
+            int expectedLength = MIN_PAYLOAD_BYTES + (valueLength == NULL_VALUE ? 0 : valueLength);
+            if((valueLength < 0 && valueLength != NULL_VALUE) || expectedLength != payloadLength){
+                break;
+            }
+            String value = valueLength == NULL_VALUE ? null : new String(payload, MIN_PAYLOAD_BYTES, valueLength, StandardCharsets.UTF_8);
+
+            if(store.getVersion(key) <= version){
+                store.put(new Item(key, value, version));
+            }
+            records++;
+            validEnd += HEADER_BYTES + payloadLength + TRAILER_BYTES;
+        }
+
+        if(validEnd < size){
+            channel.truncate(validEnd);
+        }
+        channel.position(validEnd);
+        committedRecords = records;
+        return records;
+    }
+
+    // remove every record from the log
+    public void reset() throws IOException {
+        discardPending();
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(false);
+        committedRecords = 0;
+    }
+
+    public void close() throws IOException {
+        commit();
+        channel.close();
+    }
+
+    public long getCommittedRecords(){
+        return committedRecords;
+    }
+
+    public File getFile(){
+        return file;
+    }
+
+    private void ensurePendingCapacity(int bytes){
+        if(pending.remaining() < bytes){
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes));
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+    }
+}